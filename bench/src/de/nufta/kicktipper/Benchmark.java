@@ -0,0 +1,36 @@
+package de.nufta.kicktipper;
+
+/**
+ * A single benchmark run by {@link BenchmarkRunner}. Only {@link #operation()} is timed and counted for allocations.
+ */
+abstract class Benchmark {
+
+    private final String name;
+
+    Benchmark(final String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Called once before the benchmark is run
+     */
+    void setupTrial() throws Exception {
+    }
+
+    /**
+     * Called before every operation, not measured
+     */
+    void setupOperation() throws Exception {
+    }
+
+    /**
+     * The measured operation
+     *
+     * @return some result of the operation, so it can not be optimised away
+     */
+    abstract long operation() throws Exception;
+}
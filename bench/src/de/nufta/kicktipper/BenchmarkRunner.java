@@ -0,0 +1,236 @@
+package de.nufta.kicktipper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import de.nufta.kicktipper.SeasonParser.LineMode;
+
+/**
+ * Runs the parse, ingest, rate and predict benchmarks and an end-to-end run on synthetic data of several sizes,
+ * measuring throughput and allocated bytes per operation.
+ *
+ * <pre>
+ * BenchmarkRunner [-quick] [-compare baseline.txt] [-write baseline.txt] [leagues x seasons x gamesPerSeason ...]
+ * </pre>
+ *
+ * Result lines have the same format as bench/baseline.txt. With <code>-compare</code> every result is compared to the
+ * line with the same benchmark and scale, and slowdowns or allocation increases of more than 10% are flagged.
+ */
+public class BenchmarkRunner {
+
+    private static final String[] DEFAULT_SCALES = { "1x5x132", "4x20x306" };
+    private static final double TOLERANCE = 0.10;
+    private static final String HEADER = String.format(Locale.ROOT, "%-26s %-10s %14s %9s %12s %14s %6s",
+            "# benchmark", "scale", "ops/s", "error", "ms/op", "B/op", "gc");
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    private final PrintStream out = System.out;
+    private final PrintStream nullOut = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationNanos = 1_000_000_000L;
+    /** bytes allocated by measuring the allocation itself */
+    private long allocationOverhead;
+
+    private final Map<String, double[]> baseline = new HashMap<>();
+    private final List<String> results = new ArrayList<>();
+    private int regressions;
+
+    /**
+     * Measure one benchmark and print its result line
+     */
+    private void run(Benchmark benchmark, String scale) throws Exception {
+        System.setOut(nullOut);
+        benchmark.setupTrial();
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(benchmark);
+        }
+        double[] opsPerSecond = new double[iterations];
+        long ops = 0, nanos = 0, bytes = 0, gcs = gcCount();
+        for (int i = 0; i < iterations; i++) {
+            long[] iteration = iteration(benchmark);
+            ops += iteration[0];
+            nanos += iteration[1];
+            bytes += iteration[2];
+            opsPerSecond[i] = iteration[0] * 1e9 / iteration[1];
+        }
+        gcs = gcCount() - gcs;
+        System.setOut(out);
+
+        double mean = ops * 1e9 / nanos;
+        double variance = 0;
+        for (double value : opsPerSecond) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        double bytesPerOp = (double) bytes / ops;
+        String line = String.format(Locale.ROOT, "%-26s %-10s %14.3f %9.3f %12.3f %14.0f %6d", benchmark.getName(),
+                scale, mean, error, nanos / 1e6 / ops, bytesPerOp, gcs);
+        results.add(line);
+        out.println(line + compare(benchmark.getName() + " " + scale, mean, bytesPerOp));
+    }
+
+    /**
+     * Run the operation until the iteration time is used up
+     *
+     * @return operations, measured nanoseconds and allocated bytes
+     */
+    private long[] iteration(Benchmark benchmark) throws Exception {
+        long ops = 0, nanos = 0, bytes = 0, sink = 0;
+        while (nanos < iterationNanos) {
+            benchmark.setupOperation();
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            sink += benchmark.operation();
+            nanos += System.nanoTime() - start;
+            bytes += allocatedBytes() - allocated - allocationOverhead;
+            ops++;
+        }
+        if (sink == 42) {
+            out.print("");
+        }
+        return new long[] { ops, nanos, Math.max(0, bytes) };
+    }
+
+    /**
+     * Bytes allocated by all live threads, so work on the fork-join pool is included
+     */
+    private static long allocatedBytes() {
+        long sum = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (bytes > 0) {
+                sum += bytes;
+            }
+        }
+        return sum;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private void calibrate() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long allocated = allocatedBytes();
+            min = Math.min(min, allocatedBytes() - allocated);
+        }
+        allocationOverhead = min;
+    }
+
+    private void loadBaseline(String file) throws IOException {
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split("\\s+");
+            if (line.startsWith("#") || fields.length < 7) {
+                continue;
+            }
+            baseline.put(fields[0] + " " + fields[1],
+                    new double[] { Double.parseDouble(fields[2]), Double.parseDouble(fields[5]) });
+        }
+    }
+
+    private String compare(String key, double opsPerSecond, double bytesPerOp) {
+        double[] base = baseline.get(key);
+        if (base == null) {
+            return "";
+        }
+        String speed = String.format(Locale.ROOT, "  %+6.1f%% ops/s", (opsPerSecond / base[0] - 1) * 100);
+        String alloc = base[1] > 0 ? String.format(Locale.ROOT, " %+6.1f%% B/op", (bytesPerOp / base[1] - 1) * 100)
+                : "";
+        if (opsPerSecond < base[0] * (1 - TOLERANCE) || bytesPerOp > base[1] * (1 + TOLERANCE) + 64) {
+            regressions++;
+            return speed + alloc + "  REGRESSION";
+        }
+        return speed + alloc;
+    }
+
+    private void runAll(List<String> scales) throws Exception {
+        out.println(HEADER);
+        run(ParseBenchmark.bundled(null), "bundled");
+        run(ParseBenchmark.bundled(LineMode.REGEX), "bundled");
+        run(ParseBenchmark.bundled(LineMode.SCANNER), "bundled");
+        for (String scale : scales) {
+            String[] size = scale.split("x");
+            SyntheticData data = new SyntheticData(Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                    Integer.parseInt(size[2]), 4711);
+            run(ParseBenchmark.synthetic(data, LineMode.SCANNER), scale);
+            run(new IngestBenchmark(data, false), scale);
+            run(new IngestBenchmark(data, true), scale);
+            run(new RateBenchmark(data, RatingEngine.Kind.GLICKO2), scale);
+            run(new RateBenchmark(data, RatingEngine.Kind.GOOCHJS), scale);
+            run(new RateBenchmark(data, RatingEngine.Kind.SPARSE), scale);
+            run(new PredictBenchmark(data, false, false), scale);
+            run(new PredictBenchmark(data, true, false), scale);
+            run(new PredictBenchmark(data, false, true), scale);
+            run(new EndToEndBenchmark(data), scale);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        List<String> scales = new ArrayList<>();
+        String write = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-quick":
+                    runner.warmupIterations = 1;
+                    runner.iterations = 2;
+                    runner.iterationNanos = 200_000_000L;
+                    break;
+                case "-compare":
+                    runner.loadBaseline(args[++i]);
+                    break;
+                case "-write":
+                    write = args[++i];
+                    break;
+                default:
+                    scales.add(args[i]);
+            }
+        }
+        if (scales.isEmpty()) {
+            for (String scale : DEFAULT_SCALES) {
+                scales.add(scale);
+            }
+        }
+        runner.calibrate();
+        runner.runAll(scales);
+        if (write != null) {
+            List<String> lines = new ArrayList<>();
+            lines.add("# " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version") + ", "
+                    + Runtime.getRuntime().availableProcessors() + " cpus");
+            lines.add(HEADER);
+            lines.addAll(runner.results);
+            Files.write(Paths.get(write), lines, StandardCharsets.UTF_8);
+        }
+        if (runner.regressions > 0) {
+            System.out.println(runner.regressions + " regression(s)");
+            System.exit(1);
+        }
+    }
+}
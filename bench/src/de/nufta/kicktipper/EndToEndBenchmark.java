@@ -0,0 +1,26 @@
+package de.nufta.kicktipper;
+
+/**
+ * Loads, rates and predicts every synthetic league from scratch
+ */
+class EndToEndBenchmark extends Benchmark {
+
+    private final SyntheticData syntheticData;
+
+    EndToEndBenchmark(final SyntheticData syntheticData) {
+        super("endToEnd");
+        this.syntheticData = syntheticData;
+    }
+
+    @Override
+    long operation() {
+        long games = 0;
+        for (int league = 0; league < syntheticData.getLeagues(); league++) {
+            KickTipper tipper = new SyntheticKickTipper(syntheticData, league);
+            tipper.run();
+            tipper.predict();
+            games += tipper.predictions.getGames().size();
+        }
+        return games;
+    }
+}
@@ -0,0 +1,246 @@
+package de.nufta.kicktipper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.goochjs.glicko2.Rating;
+import org.goochjs.glicko2.RatingCalculator;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * Checks that adding the results of a matchday rates exactly like replaying them, and that a snapshot restores
+ * exactly what it was written from. On the bundled result files of a tournament, three states are compared:
+ * <ul>
+ * <li>all seasons replayed from the files,</li>
+ * <li>the latest season replayed without its last matchday, which is then added twice, the second time without
+ * effect,</li>
+ * <li>the second state written to a snapshot and restored into a new context.</li>
+ * </ul>
+ * Games, with their phase numbers, ratings before and after and rated differences, the ratings of all teams and
+ * regions and the rating histories must be identical bit for bit.
+ *
+ * <pre>
+ * IncrementalCheck [league] [wc]
+ * </pre>
+ *
+ * Exits with status 1 if any difference is found.
+ */
+public class IncrementalCheck {
+
+    private static final int MAX_REPORTED = 10;
+
+    private final List<String> differences = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        List<String> modes = Arrays.asList(args.length > 0 ? args : new String[] { "league", "wc" });
+        boolean identical = true;
+        for (String mode : modes) {
+            IncrementalCheck check = new IncrementalCheck();
+            switch (mode) {
+                case "league":
+                    check.run(Mode.LEAGUE, "Bundesliga Frauen", "blfr", 2013, 2017);
+                    break;
+                case "wc":
+                    check.run(Mode.WORLD_CUP, "Weltmeisterschaft", "wm", 2002, 2018);
+                    break;
+                default:
+                    System.err.println("Unknown mode " + mode + ", expected league or wc");
+                    System.exit(64);
+            }
+            identical &= check.report(mode);
+        }
+        System.exit(identical ? 0 : 1);
+    }
+
+    private void run(final Mode mode, final String name, final String shortName, final int startYear,
+            final int endYear) throws IOException {
+        final String latestFile = shortName + "_" + endYear + "_res.txt";
+        final String[] split = splitLastMatchday(mode, latestFile);
+
+        KickTipper replayed = new KickTipper(mode, name, shortName, startYear, endYear, endYear);
+        replayed.run();
+
+        KickTipper incremental = new KickTipper(mode, name, shortName, startYear, endYear, endYear) {
+            @Override
+            Reader openData(String fileName) {
+                return fileName.equals(latestFile) ? new StringReader(split[1]) : super.openData(fileName);
+            }
+        };
+        incremental.run();
+        incremental.addResults(new StringReader(split[0]));
+        compare("added", replayed.getContext(), replayed.seasons, incremental.getContext(), incremental.seasons);
+        incremental.addResults(new StringReader(split[0]));
+        compare("added twice", replayed.getContext(), replayed.seasons, incremental.getContext(),
+                incremental.seasons);
+
+        Path file = Files.createTempFile("kicktipper", ".snapshot");
+        try {
+            Snapshot.write(file, 0, incremental.getContext(), incremental.seasons);
+            TournamentContext restoredContext = new TournamentContext(mode, RatingEngine.Kind.GLICKO2);
+            List<Season> restored = Snapshot.read(file, 0, restoredContext, new RatingCalculator());
+            if (restored == null) {
+                differences.add("snapshot not restored");
+            } else {
+                compare("restored", incremental.getContext(), incremental.seasons, restoredContext, restored);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Split a result file into its last matchday and the rest. League files are in chronological order, world cup
+     * files start with the latest matchday; there both parts keep the heading of the latest tournament phase.
+     *
+     * @return the last matchday and the rest of the file
+     */
+    private static String[] splitLastMatchday(final Mode mode, final String fileName) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                KickTipper.class.getResourceAsStream("data/" + fileName), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        if (mode == Mode.LEAGUE) {
+            int cut = lines.size() - 1;
+            while (!lines.get(cut).contains("Spieltag")) {
+                cut--;
+            }
+            return new String[] { join(lines.subList(cut, lines.size())), join(lines.subList(0, cut)) };
+        }
+        int cut = 2;
+        while (!lines.get(cut).contains("Spieltag")) {
+            cut++;
+        }
+        return new String[] { join(lines.subList(0, cut)),
+                lines.get(0) + "\n" + join(lines.subList(cut, lines.size())) };
+    }
+
+    private static String join(final List<String> lines) {
+        return String.join("\n", lines) + "\n";
+    }
+
+    /**
+     * Compare two states of a tournament, by team names and games rather than ids and rows
+     */
+    private void compare(final String label, final TournamentContext expectedContext,
+            final List<Season> expectedSeasons, final TournamentContext actualContext,
+            final List<Season> actualSeasons) {
+        Map<String, Game> actualGames = new HashMap<>();
+        int actualCount = 0;
+        for (Season season : actualSeasons) {
+            for (Game game : season.getGames()) {
+                actualGames.put(key(game), game);
+                actualCount++;
+            }
+        }
+        int expectedCount = 0;
+        for (Season season : expectedSeasons) {
+            for (Game expected : season.getGames()) {
+                expectedCount++;
+                Game actual = actualGames.get(key(expected));
+                if (actual == null) {
+                    differences.add(label + ": missing " + expected);
+                    continue;
+                }
+                check(label, expected, "phase", expected.getTournamentPhaseNumber(),
+                        actual.getTournamentPhaseNumber());
+                check(label, expected, "score1", expected.getScore1(), actual.getScore1());
+                check(label, expected, "score2", expected.getScore2(), actual.getScore2());
+                check(label, expected, "ratingBefore1", expected.getRatingBefore1(), actual.getRatingBefore1());
+                check(label, expected, "ratingBefore2", expected.getRatingBefore2(), actual.getRatingBefore2());
+                check(label, expected, "ratingAfter1", expected.getRatingAfter1(), actual.getRatingAfter1());
+                check(label, expected, "ratingAfter2", expected.getRatingAfter2(), actual.getRatingAfter2());
+                check(label, expected, "ratedDifference", expected.getRatedDifference(),
+                        actual.getRatedDifference());
+            }
+        }
+        if (expectedCount != actualCount) {
+            differences.add(label + ": " + actualCount + " games instead of " + expectedCount);
+        }
+
+        Map<String, Team> actualTeams = new HashMap<>();
+        for (Team team : actualContext.getTeamRepository().getAllTeams()) {
+            actualTeams.put(team.getName(), team);
+        }
+        for (Team expected : expectedContext.getTeamRepository().getAllTeams()) {
+            Team actual = actualTeams.get(expected.getName());
+            if (actual == null) {
+                differences.add(label + ": missing team " + expected.getName());
+                continue;
+            }
+            check(label, expected.getName(), expected.getRating(), actual.getRating());
+            RatingHistory.Range expectedTrack = expectedContext.getRatingHistory().getAll(expected);
+            RatingHistory.Range actualTrack = actualContext.getRatingHistory().getAll(actual);
+            if (!expectedTrack.toString().equals(actualTrack.toString())) {
+                differences.add(label + ": rating history of " + expected.getName() + " differs");
+            }
+        }
+
+        Map<String, Team> actualRegions = new HashMap<>();
+        for (Team region : actualContext.getWorldRepository().getRegionTeams()) {
+            actualRegions.put(region.getName(), region);
+        }
+        for (Team expected : expectedContext.getWorldRepository().getRegionTeams()) {
+            Team actual = actualRegions.get(expected.getName());
+            if (actual == null) {
+                differences.add(label + ": missing region " + expected.getName());
+            } else {
+                check(label, "region " + expected.getName(), expected.getRating(), actual.getRating());
+            }
+        }
+    }
+
+    private static String key(final Game game) {
+        return game.getSeason() + "|" + game.getTournamentPhaseName() + "|" + game.getDay() + "|" + game.getDate()
+                + "|" + game.getTeam1().getName() + "|" + game.getTeam2().getName();
+    }
+
+    private void check(final String label, final Game game, final String field, final double expected,
+            final double actual) {
+        if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+            differences.add(label + ": " + field + " " + actual + " instead of " + expected + " in " + game);
+        }
+    }
+
+    private void check(final String label, final String name, final Rating expected, final Rating actual) {
+        if (Double.doubleToLongBits(expected.getRating()) != Double.doubleToLongBits(actual.getRating())
+                || Double.doubleToLongBits(expected.getRatingDeviation()) != Double
+                        .doubleToLongBits(actual.getRatingDeviation())
+                || Double.doubleToLongBits(expected.getVolatility()) != Double
+                        .doubleToLongBits(actual.getVolatility())) {
+            differences.add(label + ": rating of " + name + " " + actual.getRating() + " instead of "
+                    + expected.getRating());
+        }
+    }
+
+    /**
+     * Print the differences found
+     *
+     * @return <code>true</code> if there are none
+     */
+    private boolean report(final String mode) {
+        if (differences.isEmpty()) {
+            System.out.println(mode + ": identical");
+            return true;
+        }
+        System.out.println(mode + ": " + differences.size() + " differences");
+        for (String difference : differences.subList(0, Math.min(MAX_REPORTED, differences.size()))) {
+            System.out.println("  " + difference);
+        }
+        return false;
+    }
+}
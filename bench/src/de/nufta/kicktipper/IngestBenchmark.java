@@ -0,0 +1,59 @@
+package de.nufta.kicktipper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * Loads and rates every synthetic league from a data directory, with the files tokenized one after another or in
+ * parallel
+ */
+class IngestBenchmark extends Benchmark {
+
+    private final SyntheticData syntheticData;
+    private final boolean parallel;
+    private Path directory;
+
+    IngestBenchmark(final SyntheticData syntheticData, final boolean parallel) {
+        super(parallel ? "ingest.parallel" : "ingest.sequential");
+        this.syntheticData = syntheticData;
+        this.parallel = parallel;
+    }
+
+    @Override
+    void setupTrial() throws IOException {
+        directory = Files.createTempDirectory("kicktipper-ingest");
+        directory.toFile().deleteOnExit();
+        for (int league = 0; league < syntheticData.getLeagues(); league++) {
+            String shortName = syntheticData.shortName(league);
+            for (int year = SyntheticData.FIRST_YEAR; year <= syntheticData.getLastYear(); year++) {
+                write(shortName + "_" + year + "_res.txt");
+            }
+            write(shortName + "_pred.txt");
+        }
+    }
+
+    private void write(String fileName) throws IOException {
+        Path file = directory.resolve(fileName);
+        Files.write(file, syntheticData.get(fileName));
+        file.toFile().deleteOnExit();
+    }
+
+    @Override
+    long operation() {
+        long games = 0;
+        for (int league = 0; league < syntheticData.getLeagues(); league++) {
+            KickTipper tipper = new KickTipper(Mode.LEAGUE, "Synthetic " + league, syntheticData.shortName(league),
+                    SyntheticData.FIRST_YEAR, syntheticData.getLastYear(), syntheticData.getLastYear());
+            tipper.setDataDirectory(directory);
+            tipper.setParallel(parallel);
+            tipper.run();
+            for (Season season : tipper.seasons) {
+                games += season.size();
+            }
+        }
+        return games;
+    }
+}
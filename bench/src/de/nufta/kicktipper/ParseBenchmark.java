@@ -0,0 +1,116 @@
+package de.nufta.kicktipper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.goochjs.glicko2.RatingCalculator;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+import de.nufta.kicktipper.SeasonParser.LineMode;
+
+/**
+ * Parses a set of data files held in memory with {@link SeasonParser}. With no line mode the files are only read line
+ * by line, which is the lower bound for parsing.
+ */
+class ParseBenchmark extends Benchmark {
+
+    private static final String[] BUNDLED_FILES = { "blfr_2013_res.txt", "blfr_2014_res.txt", "blfr_2015_res.txt",
+            "blfr_2016_res.txt", "blfr_2017_res.txt", "wm_2002_res.txt", "wm_2006_res.txt", "wm_2010_res.txt",
+            "wm_2014_res.txt", "wm_2018_res.txt" };
+
+    private final List<String> fileNames = new ArrayList<>();
+    private final List<Mode> modes = new ArrayList<>();
+    private final List<byte[]> data = new ArrayList<>();
+    private final LineMode lineMode;
+    private final RatingCalculator calc = new RatingCalculator();
+
+    private ParseBenchmark(final String name, final LineMode lineMode) {
+        super(name);
+        this.lineMode = lineMode;
+    }
+
+    /**
+     * Parse the result files in src/de/nufta/kicktipper/data
+     *
+     * @param lineMode <code>null</code> to just read the lines
+     */
+    static ParseBenchmark bundled(LineMode lineMode) throws IOException {
+        ParseBenchmark benchmark = new ParseBenchmark("parse.bundled." + name(lineMode), lineMode);
+        for (String file : BUNDLED_FILES) {
+            try (InputStream in = SeasonParser.class.getResourceAsStream("data/" + file)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                }
+                benchmark.add(file, file.startsWith("wm") ? Mode.WORLD_CUP : Mode.LEAGUE, out.toByteArray());
+            }
+        }
+        return benchmark;
+    }
+
+    /**
+     * Parse all result files of the synthetic data
+     *
+     * @param lineMode <code>null</code> to just read the lines
+     */
+    static ParseBenchmark synthetic(SyntheticData syntheticData, LineMode lineMode) {
+        ParseBenchmark benchmark = new ParseBenchmark("parse.synthetic." + name(lineMode), lineMode);
+        for (int league = 0; league < syntheticData.getLeagues(); league++) {
+            for (int year = SyntheticData.FIRST_YEAR; year <= syntheticData.getLastYear(); year++) {
+                String file = syntheticData.shortName(league) + "_" + year + "_res.txt";
+                benchmark.add(file, Mode.LEAGUE, syntheticData.get(file));
+            }
+        }
+        return benchmark;
+    }
+
+    private static String name(LineMode lineMode) {
+        return lineMode == null ? "read" : lineMode.name().toLowerCase();
+    }
+
+    private void add(String fileName, Mode mode, byte[] bytes) {
+        fileNames.add(fileName);
+        modes.add(mode);
+        data.add(bytes);
+    }
+
+    @Override
+    long operation() throws IOException {
+        return lineMode == null ? read() : parse();
+    }
+
+    private long read() throws IOException {
+        long count = 0;
+        for (byte[] bytes : data) {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes)))) {
+                while (br.readLine() != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private long parse() {
+        long games = 0;
+        // fresh contexts, their game stores keep every parsed game
+        TournamentContext leagueContext = new TournamentContext(Mode.LEAGUE);
+        TournamentContext worldCupContext = new TournamentContext(Mode.WORLD_CUP);
+        for (int i = 0; i < data.size(); i++) {
+            TournamentContext context = modes.get(i) == Mode.WORLD_CUP ? worldCupContext : leagueContext;
+            SeasonParser parser = new SeasonParser(context, 0, fileNames.get(i), SeasonParser.SEASON_MODE, calc, null);
+            parser.setLineMode(lineMode);
+            Season season = parser.parse(new InputStreamReader(new ByteArrayInputStream(data.get(i))));
+            games += season.size();
+        }
+        return games;
+    }
+}
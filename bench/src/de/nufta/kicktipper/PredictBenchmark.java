@@ -0,0 +1,59 @@
+package de.nufta.kicktipper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicts the next matchday of every synthetic league, including building the prediction index. Loading and rating
+ * happen once before the benchmark. The ratings do not change between operations, so the {@link PredictionCache}
+ * would answer every operation after the first; it is cleared before each one unless the cache is what is measured.
+ */
+class PredictBenchmark extends Benchmark {
+
+    private final SyntheticData syntheticData;
+    private final boolean parallel;
+    private final boolean cached;
+    private final List<KickTipper> tippers = new ArrayList<>();
+
+    /**
+     * @param parallel predict the fixtures in parallel
+     * @param cached keep the predictions cached between operations, measuring cache hits
+     */
+    PredictBenchmark(final SyntheticData syntheticData, final boolean parallel, final boolean cached) {
+        super(cached ? "predict.cached" : parallel ? "predict.parallel" : "predict.sequential");
+        this.syntheticData = syntheticData;
+        this.parallel = parallel;
+        this.cached = cached;
+    }
+
+    @Override
+    void setupTrial() {
+        for (int league = 0; league < syntheticData.getLeagues(); league++) {
+            KickTipper tipper = new SyntheticKickTipper(syntheticData, league);
+            tipper.setParallel(parallel);
+            tipper.run();
+            tippers.add(tipper);
+        }
+    }
+
+    @Override
+    void setupOperation() {
+        if (!cached) {
+            for (KickTipper tipper : tippers) {
+                tipper.clearPredictionCache();
+            }
+        }
+    }
+
+    @Override
+    long operation() {
+        long goals = 0;
+        for (KickTipper tipper : tippers) {
+            tipper.predict();
+            for (Game game : tipper.predictions.getGames()) {
+                goals += game.getScore1() + game.getScore2();
+            }
+        }
+        return goals;
+    }
+}
@@ -0,0 +1,53 @@
+package de.nufta.kicktipper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.goochjs.glicko2.RatingCalculator;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * Rates all seasons of the synthetic leagues with a rating engine. The seasons are parsed again before every operation.
+ */
+class RateBenchmark extends Benchmark {
+
+    private final SyntheticData syntheticData;
+    private final RatingEngine.Kind ratingEngine;
+    private final RatingCalculator calc = new RatingCalculator();
+    private final List<Season> seasons = new ArrayList<>();
+
+    RateBenchmark(final SyntheticData syntheticData, final RatingEngine.Kind ratingEngine) {
+        super(ratingEngine == RatingEngine.Kind.GLICKO2 ? "rate" : "rate." + ratingEngine.name().toLowerCase());
+        this.syntheticData = syntheticData;
+        this.ratingEngine = ratingEngine;
+    }
+
+    @Override
+    void setupOperation() {
+        seasons.clear();
+        // a fresh context, its game store keeps every parsed game
+        TournamentContext context = new TournamentContext(Mode.LEAGUE, ratingEngine);
+        for (int league = 0; league < syntheticData.getLeagues(); league++) {
+            Season previousSeason = null;
+            for (int year = SyntheticData.FIRST_YEAR; year <= syntheticData.getLastYear(); year++) {
+                String file = syntheticData.shortName(league) + "_" + year + "_res.txt";
+                SeasonParser parser = new SeasonParser(context, year, file, SeasonParser.SEASON_MODE, calc, previousSeason);
+                previousSeason = parser.parse(new InputStreamReader(new ByteArrayInputStream(syntheticData.get(file))));
+                seasons.add(previousSeason);
+            }
+        }
+    }
+
+    @Override
+    long operation() {
+        long games = 0;
+        for (Season season : seasons) {
+            season.rate();
+            games += season.size();
+        }
+        return games;
+    }
+}
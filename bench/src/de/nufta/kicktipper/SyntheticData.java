@@ -0,0 +1,135 @@
+package de.nufta.kicktipper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates league result and prediction files in the flashscore format understood by {@link SeasonParser}. Every
+ * league has its own teams with a hidden strength, scores are drawn from Poisson distributions around it. Two teams
+ * of the pool sit out each season, so promoted teams occur as in real data.
+ */
+class SyntheticData {
+
+    static final int FIRST_YEAR = 2000;
+    static final int TEAMS = 18;
+    private static final int POOL = TEAMS + 2;
+
+    private final int leagues;
+    private final int seasons;
+    private final int gamesPerSeason;
+    private final Map<String, byte[]> files = new HashMap<>();
+
+    /**
+     * Creates a new Instance
+     *
+     * @param leagues number of leagues
+     * @param seasons number of seasons per league
+     * @param gamesPerSeason number of games per season
+     * @param seed random seed, the same parameters and seed give the same files
+     */
+    SyntheticData(final int leagues, final int seasons, final int gamesPerSeason, final long seed) {
+        this.leagues = leagues;
+        this.seasons = seasons;
+        this.gamesPerSeason = gamesPerSeason;
+        for (int league = 0; league < leagues; league++) {
+            Random random = new Random(seed * 31 + league);
+            double[] strength = new double[POOL];
+            for (int i = 0; i < POOL; i++) {
+                strength[i] = random.nextGaussian();
+            }
+            for (int season = 0; season < seasons; season++) {
+                files.put(shortName(league) + "_" + (FIRST_YEAR + season) + "_res.txt",
+                        season(league, season, strength, random, false));
+            }
+            files.put(shortName(league) + "_pred.txt", season(league, seasons, strength, random, true));
+        }
+    }
+
+    int getLeagues() {
+        return leagues;
+    }
+
+    int getSeasons() {
+        return seasons;
+    }
+
+    int getGamesPerSeason() {
+        return gamesPerSeason;
+    }
+
+    int getLastYear() {
+        return FIRST_YEAR + seasons - 1;
+    }
+
+    String shortName(int league) {
+        return "syn" + league;
+    }
+
+    byte[] get(String fileName) {
+        byte[] data = files.get(fileName);
+        if (data == null) {
+            throw new IllegalArgumentException("No synthetic file " + fileName);
+        }
+        return data;
+    }
+
+    private byte[] season(int league, int season, double[] strength, Random random, boolean prediction) {
+        int[] teams = new int[TEAMS];
+        for (int i = 0, t = 0; i < POOL; i++) {
+            if (i != season % POOL && i != (season + 7) % POOL) {
+                teams[t++] = i;
+            }
+        }
+        int gamesPerDay = TEAMS / 2;
+        int days = prediction ? 1 : (gamesPerSeason + gamesPerDay - 1) / gamesPerDay;
+        StringBuilder sb = new StringBuilder();
+        // flashscore lists the latest matchday first
+        for (int day = days; day >= 1; day--) {
+            sb.append(day).append(". Spieltag\n");
+            shuffle(teams, random);
+            int games = prediction ? gamesPerDay : Math.min(gamesPerDay, gamesPerSeason - (day - 1) * gamesPerDay);
+            for (int g = 0; g < games; g++) {
+                int home = teams[2 * g];
+                int away = teams[2 * g + 1];
+                sb.append(String.format("%02d.%02d. 15:30\t\n", 1 + day % 28, 1 + (day / 28) % 12));
+                sb.append("Synthetic ").append(league).append(" Team ").append(home).append('\n');
+                sb.append("Synthetic ").append(league).append(" Team ").append(away).append('\n');
+                if (prediction) {
+                    sb.append(" \n");
+                } else {
+                    double delta = 0.35 * (strength[home] - strength[away]);
+                    sb.append(poisson(1.5 * Math.exp(delta), random)).append(" : ")
+                            .append(poisson(1.2 * Math.exp(-delta), random)).append("\t\n");
+                }
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void shuffle(int[] a, Random random) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+    }
+
+    private static int poisson(double lambda, Random random) {
+        double limit = Math.exp(-lambda);
+        double p = random.nextDouble();
+        int k = 0;
+        while (p > limit && k < 20) {
+            p *= random.nextDouble();
+            k++;
+        }
+        return k;
+    }
+
+    @Override
+    public String toString() {
+        return leagues + "x" + seasons + "x" + gamesPerSeason;
+    }
+}
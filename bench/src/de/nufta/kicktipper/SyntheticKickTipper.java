@@ -0,0 +1,27 @@
+package de.nufta.kicktipper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * A league {@link KickTipper} reading its files from {@link SyntheticData}
+ */
+class SyntheticKickTipper extends KickTipper {
+
+    private final SyntheticData data;
+
+    SyntheticKickTipper(final SyntheticData data, final int league) {
+        super(Mode.LEAGUE, "Synthetic " + league, data.shortName(league), SyntheticData.FIRST_YEAR, data.getLastYear(),
+                data.getLastYear());
+        this.data = data;
+    }
+
+    @Override
+    Reader openData(String fileName) {
+        return new InputStreamReader(new ByteArrayInputStream(data.get(fileName)), StandardCharsets.UTF_8);
+    }
+}
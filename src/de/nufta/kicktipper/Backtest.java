@@ -0,0 +1,263 @@
+package de.nufta.kicktipper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import de.nufta.kicktipper.KicktippRules.Hit;
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * Replays the rated seasons matchday by matchday and scores how the predictions would have done. Every game is
+ * predicted like a fixture from its ratings before the game and the games of all earlier matchdays. As for
+ * predictions, the first season only serves to settle the ratings and is neither predicted nor used.
+ * <p>
+ * All games are indexed once in chronological order; a replayed game only walks the games at positions before its
+ * matchday. The index is read-only afterwards, so seasons and whole backtests with different
+ * {@link PredictionParameters} run in parallel on the same index. Previous meetings of the teams are taken from the
+ * {@link HeadToHead} records up to the matchday. Games are compared by the corrected rating differences they were
+ * rated with, so in world cup mode the region ratings do not know the replayed or later games.
+ */
+class Backtest {
+
+    private final KicktippRules rules;
+    /** picks the tips, <code>null</code> to round the average score */
+    private TipOptimizer tips;
+    private final HeadToHead headToHead;
+    /** all games of the replayed seasons, in world cup mode each followed by its reverse game */
+    private final PredictionIndex index;
+
+    /** the replayed seasons, their games are the fixtures from seasonStart[s] to seasonStart[s + 1] */
+    private final int[] years;
+    private final int[] seasonStart;
+
+    /**
+     * per replayed game: teams, ratings and result, the history position of its matchday in the index and the key of
+     * its rating period
+     */
+    private final int[] team1, team2;
+    private final double[] rating1, difference;
+    private final int[] score1, score2, limit;
+    private final long[] period;
+
+    /**
+     * Creates a new Instance
+     *
+     * @param context the tournament
+     * @param seasons the rated seasons in chronological order
+     * @param startYear the first season, not predicted
+     * @param rules scoring of the predicted results
+     */
+    Backtest(final TournamentContext context, final List<Season> seasons, final int startYear,
+            final KicktippRules rules) {
+        this.rules = rules;
+        this.headToHead = context.getHeadToHead();
+        final Mode mode = context.getMode();
+        PredictionIndex.History history = new PredictionIndex.History();
+        List<Game> fixtures = new ArrayList<>();
+        List<Integer> matchdays = new ArrayList<>();
+        List<Integer> replayed = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        for (Season season : seasons) {
+            if (season.year <= startYear) {
+                continue;
+            }
+            replayed.add(season.year);
+            starts.add(fixtures.size());
+            List<Game> games = season.getGames();
+            int from = 0;
+            while (from < games.size()) {
+                // the games of a season are ordered by rating period
+                Game first = games.get(from);
+                int to = from + 1;
+                while (to < games.size() && games.get(to).getDay() == first.getDay()
+                        && games.get(to).getTournamentPhaseNumber() == first.getTournamentPhaseNumber()) {
+                    to++;
+                }
+                int matchday = history.size();
+                for (int i = from; i < to; i++) {
+                    fixtures.add(games.get(i));
+                    matchdays.add(matchday);
+                    history.add(games.get(i));
+                    if (mode == Mode.WORLD_CUP) {
+                        history.addReverse(games.get(i));
+                    }
+                }
+                from = to;
+            }
+        }
+        starts.add(fixtures.size());
+        index = new PredictionIndex(context, history, true);
+
+        years = replayed.stream().mapToInt(Integer::intValue).toArray();
+        seasonStart = starts.stream().mapToInt(Integer::intValue).toArray();
+        limit = matchdays.stream().mapToInt(Integer::intValue).toArray();
+        final int n = fixtures.size();
+        team1 = new int[n];
+        team2 = new int[n];
+        period = new long[n];
+        rating1 = new double[n];
+        difference = new double[n];
+        score1 = new int[n];
+        score2 = new int[n];
+        for (int i = 0; i < n; i++) {
+            Game game = fixtures.get(i);
+            team1[i] = game.getTeam1().getId();
+            team2[i] = game.getTeam2().getId();
+            period[i] = RatingHistory.key(game.getSeason(), game.getTournamentPhaseNumber(), game.getDay());
+            rating1[i] = game.getRatingBefore1();
+            difference[i] = game.getRatedDifference();
+            score1[i] = game.getScore1();
+            score2[i] = game.getScore2();
+        }
+    }
+
+    /**
+     * @param optimize tip the games for the most expected points by the rules of this backtest, see
+     *        {@link TipOptimizer}, instead of rounding the average score
+     */
+    void setOptimizeTips(final boolean optimize) {
+        tips = optimize ? new TipOptimizer(rules) : null;
+    }
+
+    private PredictionEngine createEngine(final PredictionParameters parameters) {
+        PredictionEngine engine = new PredictionEngine(index, parameters, headToHead, null);
+        engine.setTipOptimizer(tips);
+        return engine;
+    }
+
+    /**
+     * Replay the seasons, one task per season
+     *
+     * @param parameters weighting of the historical games
+     * @param pool pool to replay the seasons in parallel, <code>null</code> to replay them sequentially
+     * @return the scores per season and in total
+     */
+    Result run(final PredictionParameters parameters, final ForkJoinPool pool) {
+        PredictionEngine engine = createEngine(parameters);
+        List<ForkJoinTask<Score>> tasks = new ArrayList<>();
+        if (pool != null) {
+            for (int s = 0; s < years.length; s++) {
+                final int season = s;
+                tasks.add(pool.submit(() -> replay(engine, season)));
+            }
+        }
+        Result result = new Result();
+        for (int s = 0; s < years.length; s++) {
+            Score score = pool != null ? tasks.get(s).join() : replay(engine, s);
+            result.seasons.add(score);
+            result.total.add(score);
+        }
+        return result;
+    }
+
+    /**
+     * Replay all seasons on the current thread
+     *
+     * @return the total score
+     */
+    Score score(final PredictionParameters parameters) {
+        return replay(createEngine(parameters).predictor(), 0, rating1.length, new Score(0));
+    }
+
+    private Score replay(final PredictionEngine engine, final int s) {
+        return replay(engine.predictor(), seasonStart[s], seasonStart[s + 1], new Score(years[s]));
+    }
+
+    /**
+     * Predict and score the games from one index to another
+     */
+    private Score replay(final PredictionEngine.Predictor predictor, final int from, final int to,
+            final Score score) {
+        for (int i = from; i < to; i++) {
+            if (limit[i] == 0) {
+                // nothing to predict from
+                continue;
+            }
+            int[] tip = predictor.predictScore(rating1[i], difference[i], limit[i], team1[i], team2[i], period[i]);
+            Hit hit = KicktippRules.score(tip[0], tip[1], score1[i], score2[i]);
+            score.add(hit, rules.getPoints(hit));
+        }
+        return score;
+    }
+
+    /**
+     * Hits and points of the predicted games of a season or in total
+     */
+    static final class Score {
+        /** the season, 0 for the total */
+        final int season;
+        private final int[] hits = new int[Hit.values().length];
+        private int games;
+        private int points;
+
+        Score(final int season) {
+            this.season = season;
+        }
+
+        void add(final Hit hit, final int points) {
+            hits[hit.ordinal()]++;
+            games++;
+            this.points += points;
+        }
+
+        void add(final Score score) {
+            for (int i = 0; i < hits.length; i++) {
+                hits[i] += score.hits[i];
+            }
+            games += score.games;
+            points += score.points;
+        }
+
+        int getGames() {
+            return games;
+        }
+
+        int getHits(final Hit hit) {
+            return hits[hit.ordinal()];
+        }
+
+        int getPoints() {
+            return points;
+        }
+
+        /**
+         * @return share of the games with the given hit, 0 to 1
+         */
+        double getRate(final Hit hit) {
+            return games == 0 ? 0 : (double) hits[hit.ordinal()] / games;
+        }
+
+        double getPointsPerGame() {
+            return games == 0 ? 0 : (double) points / games;
+        }
+    }
+
+    /**
+     * Scores of all replayed seasons
+     */
+    static final class Result {
+        final List<Score> seasons = new ArrayList<>();
+        final Score total = new Score(0);
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%-7s %6s %8s %8s %8s %8s %7s %7s%n",
+                    "Season", "Games", "Exact", "Diff", "Tendency", "Miss", "Points", "P/Game"));
+            for (Score score : seasons) {
+                append(sb, String.valueOf(score.season), score);
+            }
+            append(sb, "Total", total);
+            return sb.toString();
+        }
+
+        private static void append(StringBuilder sb, String name, Score score) {
+            sb.append(String.format(Locale.ROOT, "%-7s %6d %7.1f%% %7.1f%% %7.1f%% %7.1f%% %7d %7.2f%n", name,
+                    score.getGames(), 100 * score.getRate(Hit.EXACT), 100 * score.getRate(Hit.DIFFERENCE),
+                    100 * score.getRate(Hit.TENDENCY), 100 * score.getRate(Hit.MISS), score.getPoints(),
+                    score.getPointsPerGame()));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package de.nufta.kicktipper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A directory holding the data files of a tournament: result files named <code>shortName_year_res.txt</code> and the
+ * prediction file <code>shortName_pred.txt</code>.
+ * <p>
+ * Files are memory-mapped and decoded as UTF-8. Malformed input is reported as an error instead of being replaced,
+ * so a file saved with another charset does not silently turn "Südkorea" into a new team.
+ */
+class DataDirectory {
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Path directory;
+    private final String shortName;
+    private final Pattern seasonFilePattern;
+
+    DataDirectory(final Path directory, final String shortName) {
+        this.directory = directory;
+        this.shortName = shortName;
+        this.seasonFilePattern = Pattern.compile(Pattern.quote(shortName) + "_(\\d{1,9})_res\\.txt");
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Find the result files of the given years
+     *
+     * @return the files by year, in chronological order
+     */
+    SortedMap<Integer, Path> getSeasonFiles(int fromYear, int toYear) throws IOException {
+        SortedMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, shortName + "_*_res.txt")) {
+            for (Path file : stream) {
+                Matcher matcher = seasonFilePattern.matcher(file.getFileName().toString());
+                if (matcher.matches() && Files.isRegularFile(file)) {
+                    int year = Integer.parseInt(matcher.group(1));
+                    if (year >= fromYear && year <= toYear) {
+                        files.put(year, file);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    Path getPredictionFile() {
+        return directory.resolve(shortName + "_pred.txt");
+    }
+
+    /**
+     * Map a file read-only
+     */
+    static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Map a file and decode it as UTF-8, without a leading byte order mark
+     *
+     * @throws java.nio.charset.CharacterCodingException if the file is not valid UTF-8
+     */
+    static CharBuffer decode(Path file) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer chars = decoder.decode(map(file));
+        if (chars.hasRemaining() && chars.get(chars.position()) == BYTE_ORDER_MARK) {
+            chars.position(chars.position() + 1);
+        }
+        return chars;
+    }
+
+    /**
+     * Read and tokenize a file. Errors are kept in the tokens, so this can run on any thread.
+     *
+     * @param worldCup also recognise the world cup specific lines
+     */
+    static SeasonTokens tokenize(Path file, boolean worldCup) {
+        CharBuffer chars;
+        try {
+            chars = decode(file);
+        } catch (IOException e) {
+            return SeasonTokens.failed(e);
+        }
+        return SeasonTokens.tokenize(
+                new LineTokenizer(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining()),
+                worldCup);
+    }
+}
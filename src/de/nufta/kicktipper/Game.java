@@ -8,197 +8,212 @@ public class Game implements Comparable<Game> {
         WON, LOST, DRAW
     };
 
-    static volatile int counter = 0;
-
-    final private String tournamentPhaseName;
-    final private int tournamentPhaseNumber;
-    final private int season;
-    final private int day;
-    final private String date;
-    final private Team team1;
-    final private Team team2;
-    private int score1;
-    private int score2;
-    private int id = ++counter;
+    final private TournamentContext context;
+    final private GameStore store;
+    /** row of this game in the {@link GameStore} of its context */
+    final private int row;
+    /** view the game with the teams swapped */
+    final private boolean reversed;
+
+    public Game(final TournamentContext context, final String date, final int season, final int day,
+            final Team team1, final Team team2, final int score1, final int score2) {
+        this(context, "", 0, date, season, day, team1, team2, score1, score2);
+    }
 
-    /**
-     * @param score1 the score1 to set
-     */
-    public void setScore1(int score1) {
-        this.score1 = score1;
+    public Game(final TournamentContext context, final String tournamentPhaseName, final int tournamentPhaseNumber,
+            final String date, final int season, final int day, final Team team1, final Team team2, final int score1,
+            final int score2) {
+        this(context, context.getGameStore().add(context.getGameStore().nextId(), tournamentPhaseName,
+                tournamentPhaseNumber, date, season, day, team1, team2, score1, score2), false);
     }
 
     /**
-     * @param score2 the score2 to set
+     * A view on a row of the game store of the context
      */
-    public void setScore2(int score2) {
-        this.score2 = score2;
+    Game(final TournamentContext context, final int row, final boolean reversed) {
+        this.context = context;
+        this.store = context.getGameStore();
+        this.row = row;
+        this.reversed = reversed;
     }
 
-    private double ratingBefore1;
-    private double ratingBefore2;
-    private double ratingAfter1;
-    private double ratingAfter2;
+    /** Create a reverse game for ease of prediction in world cup mode */
+    Game createReverseGame() {
+        return new Game(context, row, !reversed);
+    }
 
-    public Game(final String date, final int season, final int day, final Team team1, final Team team2,
-            final int score1, final int score2) {
-        this("", 0, date, season, day, team1, team2, score1, score2);
+    /**
+     * @return the row of this game in the game store
+     */
+    int getRow() {
+        return row;
     }
 
-    public Game(final String tournamentPhaseName, final int tournamentPhaseNumber, final String date, final int season,
-            final int day, final Team team1, final Team team2, final int score1, final int score2) {
-        this.tournamentPhaseName = tournamentPhaseName;
-        this.tournamentPhaseNumber = tournamentPhaseNumber;
-        this.day = day;
-        this.team1 = team1;
-        this.team2 = team2;
-        this.score1 = score1;
-        this.score2 = score2;
-        this.season = season;
-        this.date = date;
+    /**
+     * @return whether this is the reverse view of its row
+     */
+    boolean isReversed() {
+        return reversed;
     }
 
-    /** Create a reverse game for ease of prediction in world cup mode */
-    private Game(Game o) {
-        this.tournamentPhaseName = o.tournamentPhaseName;
-        this.tournamentPhaseNumber = o.tournamentPhaseNumber;
-        this.day = o.day;
-        this.team1 = o.team2;
-        this.team2 = o.team1;
-        this.score1 = o.score2;
-        this.score2 = o.score1;
-        this.season = o.season;
-        this.date = o.date;
-        this.ratingBefore1 = o.ratingBefore2;
-        this.ratingAfter1 = o.ratingAfter2;
-        this.ratingBefore2 = o.ratingBefore1;
-        this.ratingAfter2 = o.ratingAfter1;
-        this.id = o.id;
+    /**
+     * @param score1 the score1 to set
+     */
+    public void setScore1(int score1) {
+        if (reversed) {
+            store.setScore2(row, score1);
+        } else {
+            store.setScore1(row, score1);
+        }
     }
 
-    Game createReverseGame() {
-        return new Game(this);
+    /**
+     * @param score2 the score2 to set
+     */
+    public void setScore2(int score2) {
+        if (reversed) {
+            store.setScore1(row, score2);
+        } else {
+            store.setScore2(row, score2);
+        }
     }
 
     /**
      * @return the season
      */
     public int getSeason() {
-        return season;
+        return store.getSeason(row);
+    }
+
+    /**
+     * @return the kick-off date as given in the data file
+     */
+    public String getDate() {
+        return store.getDate(row);
     }
 
     /**
      * @return the date
      */
     public int getDay() {
-        return day;
+        return store.getDay(row);
     }
 
     /**
      * @return tournament Phase ID
      */
     public int getTournamentPhaseNumber() {
-        return tournamentPhaseNumber;
+        return store.getPhaseNumber(row);
     }
 
     public String getTournamentPhaseName() {
-        return tournamentPhaseName;
+        return store.getPhaseName(row);
     }
 
     /**
      * @return the team1
      */
     public Team getTeam1() {
-        return team1;
+        return context.getTeamRepository().getTeam(reversed ? store.getTeam2(row) : store.getTeam1(row));
     }
 
     /**
      * @return the team2
      */
     public Team getTeam2() {
-        return team2;
+        return context.getTeamRepository().getTeam(reversed ? store.getTeam1(row) : store.getTeam2(row));
     }
 
     /**
      * @return the score1
      */
     public int getScore1() {
-        return score1;
+        return reversed ? store.getScore2(row) : store.getScore1(row);
     }
 
     /**
      * @return the score2
      */
     public int getScore2() {
-        return score2;
+        return reversed ? store.getScore1(row) : store.getScore2(row);
     }
 
     /**
      * @return the rating1
      */
     public double getRatingBefore1() {
-        return ratingBefore1;
+        return reversed ? store.getRatingBefore2(row) : store.getRatingBefore1(row);
     }
 
     /**
      * @param rating1 the rating1 to set
      */
     public void setRatingBefore1(double rating1) {
-        this.ratingBefore1 = rating1;
+        if (reversed) {
+            store.setRatingBefore2(row, rating1);
+        } else {
+            store.setRatingBefore1(row, rating1);
+        }
     }
 
     /**
      * @return the rating2
      */
     public double getRatingBefore2() {
-        return ratingBefore2;
+        return reversed ? store.getRatingBefore1(row) : store.getRatingBefore2(row);
     }
 
     /**
      * @param rating2 the rating2 to set
      */
     public void setRatingBefore2(double rating2) {
-        this.ratingBefore2 = rating2;
+        if (reversed) {
+            store.setRatingBefore1(row, rating2);
+        } else {
+            store.setRatingBefore2(row, rating2);
+        }
     }
 
     /**
      * @return the ratingAfter1
      */
     public double getRatingAfter1() {
-        return ratingAfter1;
+        return reversed ? store.getRatingAfter2(row) : store.getRatingAfter1(row);
     }
 
     /**
      * @return the ratingAfter2
      */
     public double getRatingAfter2() {
-        return ratingAfter2;
+        return reversed ? store.getRatingAfter1(row) : store.getRatingAfter2(row);
     }
 
     /**
      * @param ratingAfter1 the ratingAfter1 to set
      */
     public void setRatingAfter1(double ratingAfter1) {
-        this.ratingAfter1 = ratingAfter1;
+        if (reversed) {
+            store.setRatingAfter2(row, ratingAfter1);
+        } else {
+            store.setRatingAfter1(row, ratingAfter1);
+        }
     }
 
     /**
      * @param ratingAfter2 the ratingAfter2 to set
      */
     public void setRatingAfter2(double ratingAfter2) {
-        this.ratingAfter2 = ratingAfter2;
+        if (reversed) {
+            store.setRatingAfter1(row, ratingAfter2);
+        } else {
+            store.setRatingAfter2(row, ratingAfter2);
+        }
     }
 
     // Standard
     @Override
     public int compareTo(Game o) {
-        if (this.tournamentPhaseNumber != o.tournamentPhaseNumber) {
-            return new Integer(this.tournamentPhaseNumber).compareTo(o.tournamentPhaseNumber);
-        }
-        if (this.day != o.day) {
-            return new Integer(this.day).compareTo(new Integer(o.day));
-        }
-        return new Integer(this.id).compareTo(new Integer(o.id));
+        return store.compare(row, o.row);
     }
 
     /*
@@ -210,24 +225,8 @@ public class Game implements Comparable<Game> {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + day;
-        result = prime * result + id;
-        long temp;
-        temp = Double.doubleToLongBits(ratingAfter1);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(ratingAfter2);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(ratingBefore1);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(ratingBefore2);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
-        result = prime * result + score1;
-        result = prime * result + score2;
-        result = prime * result + season;
-        result = prime * result + ((team1 == null) ? 0 : team1.hashCode());
-        result = prime * result + ((team2 == null) ? 0 : team2.hashCode());
-        result = prime * result + ((tournamentPhaseName == null) ? 0 : tournamentPhaseName.hashCode());
-        result = prime * result + tournamentPhaseNumber;
+        result = prime * result + row;
+        result = prime * result + (reversed ? 1231 : 1237);
         return result;
     }
 
@@ -245,42 +244,7 @@ public class Game implements Comparable<Game> {
         if (getClass() != obj.getClass())
             return false;
         Game other = (Game) obj;
-        if (day != other.day)
-            return false;
-        if (id != other.id)
-            return false;
-        if (Double.doubleToLongBits(ratingAfter1) != Double.doubleToLongBits(other.ratingAfter1))
-            return false;
-        if (Double.doubleToLongBits(ratingAfter2) != Double.doubleToLongBits(other.ratingAfter2))
-            return false;
-        if (Double.doubleToLongBits(ratingBefore1) != Double.doubleToLongBits(other.ratingBefore1))
-            return false;
-        if (Double.doubleToLongBits(ratingBefore2) != Double.doubleToLongBits(other.ratingBefore2))
-            return false;
-        if (score1 != other.score1)
-            return false;
-        if (score2 != other.score2)
-            return false;
-        if (season != other.season)
-            return false;
-        if (team1 == null) {
-            if (other.team1 != null)
-                return false;
-        } else if (!team1.equals(other.team1))
-            return false;
-        if (team2 == null) {
-            if (other.team2 != null)
-                return false;
-        } else if (!team2.equals(other.team2))
-            return false;
-        if (tournamentPhaseName == null) {
-            if (other.tournamentPhaseName != null)
-                return false;
-        } else if (!tournamentPhaseName.equals(other.tournamentPhaseName))
-            return false;
-        if (tournamentPhaseNumber != other.tournamentPhaseNumber)
-            return false;
-        return true;
+        return store == other.store && row == other.row && reversed == other.reversed;
     }
 
     public Result getResult() {
@@ -297,45 +261,97 @@ public class Game implements Comparable<Game> {
         return getRatingBefore1() - getRatingBefore2();
     }
     
+    /**
+     * The rating difference corrected by the region ratings. It is computed once and cached until the ratings before
+     * the game or the {@link WorldRepository#getVersion() corrections} change.
+     */
     double getCorrectedRatingDifference() {
-        double diff = getRatingBefore1() - getRatingBefore2();
-        double correction = WorldRepository.getInstance().getCorrection(getTeam1().getName(), getTeam2().getName());
-        return diff + correction;
+        return getCorrectedRatingDifference(context, row, reversed);
+    }
+
+    /**
+     * {@link #getCorrectedRatingDifference()} of a row without a game object
+     */
+    static double getCorrectedRatingDifference(final TournamentContext context, final int row,
+            final boolean reversed) {
+        GameStore store = context.getGameStore();
+        WorldRepository worldRepository = context.getWorldRepository();
+        int version = worldRepository.getVersion();
+        double difference = store.getCorrectedDifference(row, version);
+        if (Double.isNaN(difference)) {
+            TeamRepository teamRepository = context.getTeamRepository();
+            difference = store.getRatingBefore1(row) - store.getRatingBefore2(row)
+                    + worldRepository.getCorrection(teamRepository.getTeam(store.getTeam1(row)).getName(),
+                            teamRepository.getTeam(store.getTeam2(row)).getName());
+            store.setCorrectedDifference(row, difference, version);
+        }
+        // 0.0 - x instead of -x: the reverse of a zero difference is zero, not negative zero
+        return reversed ? 0.0 - difference : difference;
+    }
+
+    /**
+     * The corrected rating difference the game was rated with, from the ratings and region ratings before the game.
+     * Unlike {@link #getCorrectedRatingDifference()} it does not change when later games are rated, so a replay of the
+     * game does not know the future. Without region ratings it is the corrected difference.
+     */
+    double getRatedDifference() {
+        return getRatedDifference(context, row, reversed);
+    }
+
+    /**
+     * {@link #getRatedDifference()} of a row without a game object
+     */
+    static double getRatedDifference(final TournamentContext context, final int row, final boolean reversed) {
+        double difference = context.getGameStore().getRatedDifference(row);
+        if (Double.isNaN(difference)) {
+            return getCorrectedRatingDifference(context, row, reversed);
+        }
+        return reversed ? 0.0 - difference : difference;
+    }
+
+    /**
+     * Keep the current corrected rating difference as the one the game is rated with, before the region ratings learn
+     * the result
+     */
+    void recordRatedDifference() {
+        context.getGameStore().setRatedDifference(row, getCorrectedRatingDifference(context, row, false));
     }
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(season + " ");
+        StringBuilder sb = new StringBuilder(128);
+        final String tournamentPhaseName = getTournamentPhaseName();
+        final int day = getDay();
+        final double ratingAfter1 = getRatingAfter1();
+        final double ratingAfter2 = getRatingAfter2();
+        sb.append(getSeason()).append(' ');
         if (!tournamentPhaseName.isEmpty()) {
-            sb.append(tournamentPhaseName + " # ");
+            sb.append(tournamentPhaseName).append(" # ");
         }
         if (day < SeasonParser.FINALS_OFFSET) {
-            sb.append("," + day + ".ST ");
+            sb.append(',').append(day).append(".ST ");
         } else {
-            sb.append(SeasonParser.FINALS_NAMES[day - SeasonParser.FINALS_OFFSET] + " ");
+            sb.append(SeasonParser.FINALS_NAMES[day - SeasonParser.FINALS_OFFSET]).append(' ');
         }
-        sb.append("<" + date + ">:");
-        sb.append(team1.getName() + "(" + Math.round(ratingBefore1));
+        sb.append('<').append(getDate()).append(">:");
+        sb.append(getTeam1().getName()).append('(').append(Math.round(getRatingBefore1()));
         if (ratingAfter1 > 0) {
-            sb.append("->" + Math.round(ratingAfter1));
+            sb.append("->").append(Math.round(ratingAfter1));
         }
-        sb.append(")  ");
-        sb.append(score1 + ":" + score2 + "  " + team2.getName() + "(" + Math.round(ratingBefore2));
+        sb.append(")  ").append(getScore1()).append(':').append(getScore2()).append("  ")
+                .append(getTeam2().getName()).append('(').append(Math.round(getRatingBefore2()));
         if (ratingAfter2 > 0) {
-            sb.append("->" + Math.round(ratingAfter2));
+            sb.append("->").append(Math.round(ratingAfter2));
         }
-        sb.append(")  -> diff:" + (Math.round(getRatingDifference())));
-        if (KickTipper.getMode().equals(Mode.WORLD_CUP)) {
-            WorldRepository worldRepository = WorldRepository.getInstance();
-            sb.append(" -- corrected diff: " + (Math.round(getRatingDifference()
-                    + worldRepository.getCorrection(getTeam1().getName(), getTeam2().getName()))));
+        sb.append(")  -> diff:").append(Math.round(getRatingDifference()));
+        if (context.getMode() == Mode.WORLD_CUP) {
+            sb.append(" -- corrected diff: ").append(Math.round(getCorrectedRatingDifference()));
         }
         return sb.toString();
     }
 
     public int getID() {
-        return id;
+        return store.getId(row);
     }
 
 }
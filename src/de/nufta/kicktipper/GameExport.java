@@ -0,0 +1,192 @@
+package de.nufta.kicktipper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams games with their ratings and corrected rating differences to a file for analysis elsewhere, one record per
+ * line, as CSV with a header line or as JSON Lines. Records are encoded one at a time into a reused buffer and written
+ * through a buffered channel, so an export needs the same memory for a season as for the whole archive.
+ *
+ * <pre>
+ * kind                         "result" for a rated game, "prediction" for a predicted fixture
+ * season, phase, phaseNumber, day, date, id, team1, team2
+ * score1, score2               the result, or the predicted score
+ * ratingBefore1, ratingBefore2 the ratings the game was rated or predicted with
+ * ratingAfter1, ratingAfter2   the ratings after the rating period of the game, empty for predictions
+ * correctedDifference          the difference of the ratings before, corrected by the region ratings in world cups
+ * </pre>
+ *
+ * Not thread-safe.
+ */
+class GameExport implements Closeable {
+
+    enum Format {
+        CSV, JSON_LINES
+    }
+
+    static final String RESULT = "result", PREDICTION = "prediction";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] COLUMNS = { "kind", "season", "phase", "phaseNumber", "day", "date", "id", "team1",
+            "team2", "score1", "score2", "ratingBefore1", "ratingBefore2", "ratingAfter1", "ratingAfter2",
+            "correctedDifference" };
+
+    private final Format format;
+    private final Writer out;
+    /** the current CSV record */
+    private final StringBuilder line = new StringBuilder(256);
+    /** the current JSON record */
+    private final JsonWriter json = new JsonWriter();
+    private long records;
+
+    /**
+     * Create the export file, in CSV format starting with the header line
+     */
+    GameExport(final Path file, final Format format) throws IOException {
+        this.format = format;
+        this.out = Channels.newWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE);
+        if (format == Format.CSV) {
+            for (String column : COLUMNS) {
+                separator();
+                line.append(column);
+            }
+            endLine();
+        }
+    }
+
+    /**
+     * Write the games of a season, in game order
+     *
+     * @param kind {@link #RESULT} for a rated season, {@link #PREDICTION} for predicted fixtures
+     */
+    void write(final Season season, final String kind) throws IOException {
+        for (int i = 0; i < season.size(); i++) {
+            write(season.getGame(i), kind);
+        }
+    }
+
+    /**
+     * Write a game
+     *
+     * @param kind {@link #RESULT} for a rated game, {@link #PREDICTION} for a predicted fixture
+     */
+    void write(final Game game, final String kind) throws IOException {
+        boolean rated = RESULT.equals(kind);
+        if (format == Format.CSV) {
+            text(kind);
+            number(game.getSeason());
+            text(game.getTournamentPhaseName());
+            number(game.getTournamentPhaseNumber());
+            number(game.getDay());
+            text(game.getDate());
+            number(game.getID());
+            text(game.getTeam1().getName());
+            text(game.getTeam2().getName());
+            number(game.getScore1());
+            number(game.getScore2());
+            number(game.getRatingBefore1());
+            number(game.getRatingBefore2());
+            if (rated) {
+                number(game.getRatingAfter1());
+                number(game.getRatingAfter2());
+            } else {
+                separator();
+                separator();
+            }
+            number(game.getCorrectedRatingDifference());
+            endLine();
+        } else {
+            json.clear();
+            json.beginObject().name("kind").value(kind).name("season").value(game.getSeason()).name("phase")
+                    .value(game.getTournamentPhaseName()).name("phaseNumber").value(game.getTournamentPhaseNumber())
+                    .name("day").value(game.getDay()).name("date").value(game.getDate()).name("id")
+                    .value(game.getID()).name("team1").value(game.getTeam1().getName()).name("team2")
+                    .value(game.getTeam2().getName()).name("score1").value(game.getScore1()).name("score2")
+                    .value(game.getScore2()).name("ratingBefore1").value(game.getRatingBefore1())
+                    .name("ratingBefore2").value(game.getRatingBefore2());
+            if (rated) {
+                json.name("ratingAfter1").value(game.getRatingAfter1()).name("ratingAfter2")
+                        .value(game.getRatingAfter2());
+            }
+            json.name("correctedDifference").value(game.getCorrectedRatingDifference()).endObject();
+            out.write(json.toString());
+            out.write('\n');
+        }
+        records++;
+    }
+
+    /**
+     * @return the number of games written
+     */
+    long getRecords() {
+        return records;
+    }
+
+    private void separator() {
+        if (line.length() > 0) {
+            line.append(',');
+        }
+    }
+
+    private void number(final long value) {
+        separator();
+        line.append(value);
+    }
+
+    private void number(final double value) {
+        separator();
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            line.append(value);
+        }
+    }
+
+    /**
+     * Append a field, quoted if it contains a separator, a quote or a line break
+     */
+    private void text(final String value) {
+        separator();
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private void endLine() throws IOException {
+        line.append('\n');
+        out.append(line);
+        line.setLength(0);
+    }
+
+    /**
+     * Write the remaining records and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,310 @@
+package de.nufta.kicktipper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Column store for all games of a {@link TournamentContext}. Each game is a row; its attributes live in primitive
+ * arrays (team ids, byte scores, short day and phase, double ratings) and its phase name is interned in a
+ * dictionary. Every game has a date line of its own, so dates are kept as the parsed strings; interning them would
+ * cost a lookup per game to share about every second string. {@link Game} objects are only views on a row.
+ * <p>
+ * Rows are allocated in chunks that never move, so values written to a row are never lost to a concurrent append.
+ * Rows are never removed, the store lives as long as its context.
+ */
+class GameStore {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The columns of {@link #CHUNK_SIZE} rows
+     */
+    private static final class Chunk {
+        final int[] id = new int[CHUNK_SIZE];
+        final int[] team1 = new int[CHUNK_SIZE];
+        final int[] team2 = new int[CHUNK_SIZE];
+        final byte[] score1 = new byte[CHUNK_SIZE];
+        final byte[] score2 = new byte[CHUNK_SIZE];
+        final short[] season = new short[CHUNK_SIZE];
+        final short[] day = new short[CHUNK_SIZE];
+        final short[] phaseNumber = new short[CHUNK_SIZE];
+        final int[] phaseName = new int[CHUNK_SIZE];
+        final String[] date = new String[CHUNK_SIZE];
+        final double[] ratingBefore1 = new double[CHUNK_SIZE];
+        final double[] ratingBefore2 = new double[CHUNK_SIZE];
+        final double[] ratingAfter1 = new double[CHUNK_SIZE];
+        final double[] ratingAfter2 = new double[CHUNK_SIZE];
+        /** the corrected rating differences the games were rated with, NaN = not recorded */
+        final double[] ratedDifference = new double[CHUNK_SIZE];
+        /** the cached corrected rating differences, <code>null</code> = not computed */
+        final Correction[] correction = new Correction[CHUNK_SIZE];
+    }
+
+    /**
+     * A corrected rating difference with the {@link WorldRepository#getVersion() version} it was computed with.
+     * Immutable, so a reader racing with a writer sees either the old or the new pair, never a mix of both.
+     */
+    private static final class Correction {
+        final double difference;
+        final int version;
+
+        Correction(final double difference, final int version) {
+            this.difference = difference;
+            this.version = version;
+        }
+    }
+
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+    /** the last game id allocated */
+    private final AtomicInteger lastId = new AtomicInteger();
+
+    private final Dictionary phaseNames = new Dictionary();
+
+    /**
+     * Allocate the id of a new game. Ids are dense and unique within the store, starting at 1. Allocating takes no
+     * lock, so games may be created on several threads at once.
+     */
+    int nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * @return the number of ids allocated, no id is greater
+     */
+    int getIdCount() {
+        return lastId.get();
+    }
+
+    /**
+     * Append a game
+     *
+     * @return its row
+     */
+    synchronized int add(final int id, final String phaseName, final int phaseNumber, final String date,
+            final int season, final int day, final Team team1, final Team team2, final int score1,
+            final int score2) {
+        int row = size;
+        if ((row >>> CHUNK_BITS) == chunks.length) {
+            Chunk[] grown = new Chunk[chunks.length + 1];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            grown[chunks.length] = new Chunk();
+            chunks = grown;
+        }
+        Chunk chunk = chunks[row >>> CHUNK_BITS];
+        int i = row & CHUNK_MASK;
+        chunk.id[i] = id;
+        chunk.team1[i] = team1.getId();
+        chunk.team2[i] = team2.getId();
+        chunk.score1[i] = toByte(score1);
+        chunk.score2[i] = toByte(score2);
+        chunk.season[i] = toShort(season);
+        chunk.day[i] = toShort(day);
+        chunk.phaseNumber[i] = toShort(phaseNumber);
+        chunk.phaseName[i] = phaseNames.intern(phaseName);
+        chunk.date[i] = date;
+        chunk.ratedDifference[i] = Double.NaN;
+        size = row + 1;
+        return row;
+    }
+
+    /**
+     * @return number of rows
+     */
+    int size() {
+        return size;
+    }
+
+    private Chunk chunk(int row) {
+        return chunks[row >>> CHUNK_BITS];
+    }
+
+    int getId(int row) {
+        return chunk(row).id[row & CHUNK_MASK];
+    }
+
+    int getTeam1(int row) {
+        return chunk(row).team1[row & CHUNK_MASK];
+    }
+
+    int getTeam2(int row) {
+        return chunk(row).team2[row & CHUNK_MASK];
+    }
+
+    int getScore1(int row) {
+        return chunk(row).score1[row & CHUNK_MASK];
+    }
+
+    int getScore2(int row) {
+        return chunk(row).score2[row & CHUNK_MASK];
+    }
+
+    void setScore1(int row, int score) {
+        chunk(row).score1[row & CHUNK_MASK] = toByte(score);
+    }
+
+    void setScore2(int row, int score) {
+        chunk(row).score2[row & CHUNK_MASK] = toByte(score);
+    }
+
+    int getSeason(int row) {
+        return chunk(row).season[row & CHUNK_MASK];
+    }
+
+    int getDay(int row) {
+        return chunk(row).day[row & CHUNK_MASK];
+    }
+
+    int getPhaseNumber(int row) {
+        return chunk(row).phaseNumber[row & CHUNK_MASK];
+    }
+
+    void setPhaseNumber(int row, int phaseNumber) {
+        chunk(row).phaseNumber[row & CHUNK_MASK] = toShort(phaseNumber);
+    }
+
+    String getPhaseName(int row) {
+        return phaseNames.get(chunk(row).phaseName[row & CHUNK_MASK]);
+    }
+
+    String getDate(int row) {
+        return chunk(row).date[row & CHUNK_MASK];
+    }
+
+    double getRatingBefore1(int row) {
+        return chunk(row).ratingBefore1[row & CHUNK_MASK];
+    }
+
+    double getRatingBefore2(int row) {
+        return chunk(row).ratingBefore2[row & CHUNK_MASK];
+    }
+
+    double getRatingAfter1(int row) {
+        return chunk(row).ratingAfter1[row & CHUNK_MASK];
+    }
+
+    double getRatingAfter2(int row) {
+        return chunk(row).ratingAfter2[row & CHUNK_MASK];
+    }
+
+    void setRatingBefore1(int row, double rating) {
+        Chunk chunk = chunk(row);
+        chunk.ratingBefore1[row & CHUNK_MASK] = rating;
+        chunk.correction[row & CHUNK_MASK] = null;
+    }
+
+    void setRatingBefore2(int row, double rating) {
+        Chunk chunk = chunk(row);
+        chunk.ratingBefore2[row & CHUNK_MASK] = rating;
+        chunk.correction[row & CHUNK_MASK] = null;
+    }
+
+    void setRatingAfter1(int row, double rating) {
+        chunk(row).ratingAfter1[row & CHUNK_MASK] = rating;
+    }
+
+    void setRatingAfter2(int row, double rating) {
+        chunk(row).ratingAfter2[row & CHUNK_MASK] = rating;
+    }
+
+    /**
+     * @return the cached corrected rating difference, or NaN if it was not computed with the given version of the
+     *         corrections
+     */
+    double getCorrectedDifference(int row, int version) {
+        Correction correction = chunk(row).correction[row & CHUNK_MASK];
+        return correction != null && correction.version == version ? correction.difference : Double.NaN;
+    }
+
+    /**
+     * @return the corrected rating difference the game was rated with, NaN if it was not recorded
+     */
+    double getRatedDifference(int row) {
+        return chunk(row).ratedDifference[row & CHUNK_MASK];
+    }
+
+    void setRatedDifference(int row, double difference) {
+        chunk(row).ratedDifference[row & CHUNK_MASK] = difference;
+    }
+
+    /**
+     * Cache a corrected rating difference. The value and its version are published together, a thread that reads
+     * the version also reads the difference computed with it.
+     */
+    void setCorrectedDifference(int row, double difference, int version) {
+        chunk(row).correction[row & CHUNK_MASK] = new Correction(difference, version);
+    }
+
+    /**
+     * Order of two rows like {@link Game#compareTo(Game)}: by tournament phase, day and id
+     */
+    int compare(int row1, int row2) {
+        Chunk c1 = chunk(row1);
+        Chunk c2 = chunk(row2);
+        int i1 = row1 & CHUNK_MASK;
+        int i2 = row2 & CHUNK_MASK;
+        if (c1.phaseNumber[i1] != c2.phaseNumber[i2]) {
+            return Integer.compare(c1.phaseNumber[i1], c2.phaseNumber[i2]);
+        }
+        if (c1.day[i1] != c2.day[i2]) {
+            return Integer.compare(c1.day[i1], c2.day[i2]);
+        }
+        return Integer.compare(c1.id[i1], c2.id[i2]);
+    }
+
+    private static byte toByte(int value) {
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Score " + value + " out of range");
+        }
+        return (byte) value;
+    }
+
+    private static short toShort(int value) {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Value " + value + " out of range");
+        }
+        return (short) value;
+    }
+
+    /**
+     * Interns strings to dense ids
+     */
+    private static final class Dictionary {
+
+        private final HashMap<String, Integer> ids = new HashMap<>();
+        private volatile String[] values = new String[16];
+        /** the value interned last, the games of a phase share one instance */
+        private String last;
+        private int lastId;
+
+        /**
+         * Called under the lock of the store
+         */
+        int intern(String value) {
+            if (value == last) {
+                return lastId;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = ids.size();
+                String[] current = values;
+                if (id == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[id] = value;
+                values = current;
+                ids.put(value, id);
+            }
+            last = value;
+            lastId = id;
+            return id;
+        }
+
+        String get(int id) {
+            return values[id];
+        }
+    }
+}
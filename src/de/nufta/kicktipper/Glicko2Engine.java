@@ -0,0 +1,272 @@
+package de.nufta.kicktipper;
+
+import java.util.Arrays;
+
+import org.goochjs.glicko2.Rating;
+
+/**
+ * Glicko-2 rating engine working on primitive arrays indexed by team id. A period is rated in one pass over its games
+ * plus one over its participants, without allocating anything once the arrays have grown to size. The results are
+ * written back to the {@link Rating} of each team and are exactly those of the org.goochjs.glicko2 library: the
+ * arithmetic is done in the same order.
+ * <p>
+ * A sparse engine only rates the teams that play in a period. A participant that sits out gains its deviation for all
+ * idle periods at once, when it plays again or the engine is {@link #settle() settled}: one step from the deviation
+ * and volatility it had after its last game, instead of one per period. The results equal those of the library up
+ * to rounding.
+ * <p>
+ * Team ids must be dense and unique among the teams rated by one engine.
+ */
+class Glicko2Engine implements RatingEngine {
+
+    /** system constant, as in org.goochjs.glicko2 */
+    private static final double DEFAULT_TAU = 0.75;
+    private static final double CONVERGENCE_TOLERANCE = 0.000001;
+    private static final double WIN = 1.0, DRAW = 0.5, LOSS = 0.0;
+
+    private final double tau;
+    private final boolean sparse;
+
+    /** participants by id */
+    private Rating[] ratings = new Rating[64];
+    private int[] participants = new int[64];
+    private int participantCount;
+
+    /** number of rated periods; per team the period its deviation is up to date with */
+    private int period;
+    private int[] settled = new int[64];
+    /** sparse: the teams playing in the current period, marked in joined by period + 1 */
+    private int[] active = new int[64];
+    private int activeCount;
+    private int[] joined = new int[64];
+
+    /** games of the current period */
+    private int[] team1 = new int[64], team2 = new int[64];
+    private double[] score1 = new double[64];
+    private int gameCount;
+
+    /** per team scratch, glicko-2 scale */
+    private double[] mu = new double[64], phi = new double[64];
+    private double[] vSum = new double[64], outcomeSum = new double[64];
+    private int[] results = new int[64];
+
+    Glicko2Engine() {
+        this(DEFAULT_TAU, false);
+    }
+
+    /**
+     * @param sparse rate only the teams playing in a period
+     */
+    Glicko2Engine(final boolean sparse) {
+        this(DEFAULT_TAU, sparse);
+    }
+
+    Glicko2Engine(final double tau, final boolean sparse) {
+        this.tau = tau;
+        this.sparse = sparse;
+    }
+
+    @Override
+    public void addParticipant(Team team) {
+        int id = team.getId();
+        if (id < 0) {
+            throw new IllegalArgumentException("Team " + team.getName() + " has no id");
+        }
+        if (id >= ratings.length) {
+            int capacity = Math.max(id + 1, ratings.length * 2);
+            ratings = Arrays.copyOf(ratings, capacity);
+            mu = Arrays.copyOf(mu, capacity);
+            phi = Arrays.copyOf(phi, capacity);
+            vSum = Arrays.copyOf(vSum, capacity);
+            outcomeSum = Arrays.copyOf(outcomeSum, capacity);
+            results = Arrays.copyOf(results, capacity);
+            settled = Arrays.copyOf(settled, capacity);
+            joined = Arrays.copyOf(joined, capacity);
+        }
+        if (ratings[id] == null) {
+            ratings[id] = team.getRating();
+            settled[id] = period;
+            if (participantCount == participants.length) {
+                participants = Arrays.copyOf(participants, participantCount * 2);
+            }
+            participants[participantCount++] = id;
+        }
+    }
+
+    @Override
+    public void addGame(Team team1, Team team2, int score1, int score2) {
+        addParticipant(team1);
+        addParticipant(team2);
+        if (sparse) {
+            join(team1.getId());
+            join(team2.getId());
+        }
+        if (gameCount == this.team1.length) {
+            this.team1 = Arrays.copyOf(this.team1, gameCount * 2);
+            this.team2 = Arrays.copyOf(this.team2, gameCount * 2);
+            this.score1 = Arrays.copyOf(this.score1, gameCount * 2);
+        }
+        this.team1[gameCount] = team1.getId();
+        this.team2[gameCount] = team2.getId();
+        this.score1[gameCount] = score1 > score2 ? WIN : score1 < score2 ? LOSS : DRAW;
+        gameCount++;
+    }
+
+    @Override
+    public void updateRatings() {
+        int[] rated = sparse ? active : participants;
+        int count = sparse ? activeCount : participantCount;
+        for (int i = 0; i < count; i++) {
+            int t = rated[i];
+            Rating rating = ratings[t];
+            mu[t] = rating.getGlicko2Rating();
+            phi[t] = rating.getGlicko2RatingDeviation();
+            vSum[t] = 0;
+            outcomeSum[t] = 0;
+            results[t] = 0;
+        }
+        // one pass over the games, in the order they were added
+        for (int i = 0; i < gameCount; i++) {
+            int t1 = team1[i];
+            int t2 = team2[i];
+            addResult(t1, t2, score1[i]);
+            addResult(t2, t1, 1.0 - score1[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            int t = rated[i];
+            Rating rating = ratings[t];
+            double sigma = rating.getVolatility();
+            if (results[t] > 0) {
+                rate(rating, t, sigma);
+            } else {
+                rating.setGlicko2Rating(mu[t]);
+                rating.setGlicko2RatingDeviation(newDeviation(phi[t], sigma));
+            }
+            settled[t] = period + 1;
+        }
+        period++;
+        activeCount = 0;
+        gameCount = 0;
+    }
+
+    @Override
+    public void settle() {
+        for (int i = 0; i < participantCount; i++) {
+            inflate(participants[i]);
+        }
+    }
+
+    @Override
+    public void reset() {
+        settle();
+        for (int i = 0; i < participantCount; i++) {
+            ratings[participants[i]] = null;
+        }
+        for (int i = 0; i < activeCount; i++) {
+            joined[active[i]] = 0;
+        }
+        participantCount = 0;
+        activeCount = 0;
+        gameCount = 0;
+    }
+
+    /**
+     * Make a team one of the teams rated in the current period
+     */
+    private void join(int t) {
+        if (joined[t] != period + 1) {
+            joined[t] = period + 1;
+            inflate(t);
+            if (activeCount == active.length) {
+                active = Arrays.copyOf(active, activeCount * 2);
+            }
+            active[activeCount++] = t;
+        }
+    }
+
+    /**
+     * Let a team gain the deviation of all periods since its rating was last updated
+     */
+    private void inflate(int t) {
+        int idle = period - settled[t];
+        if (idle > 0) {
+            Rating rating = ratings[t];
+            double sigma = rating.getVolatility();
+            rating.setGlicko2Rating(rating.getGlicko2Rating());
+            rating.setGlicko2RatingDeviation(
+                    Math.sqrt(Math.pow(rating.getGlicko2RatingDeviation(), 2) + idle * Math.pow(sigma, 2)));
+            settled[t] = period;
+        }
+    }
+
+    /**
+     * Accumulate the result of a game for one of its teams
+     */
+    private void addResult(int t, int opponent, double score) {
+        double g = g(phi[opponent]);
+        double e = e(mu[t], mu[opponent], phi[opponent]);
+        vSum[t] = vSum[t] + ((Math.pow(g, 2)) * e * (1.0 - e));
+        outcomeSum[t] = outcomeSum[t] + (g * (score - e));
+        results[t]++;
+    }
+
+    /**
+     * Glicko-2 steps 3 to 8 for a team that played in this period
+     */
+    private void rate(Rating rating, int t, double sigma) {
+        double phi = this.phi[t];
+        double a = Math.log(Math.pow(sigma, 2));
+        double v = Math.pow(vSum[t], -1);
+        double delta = v * outcomeSum[t];
+        double A = a;
+        double B = 0.0;
+        if (Math.pow(delta, 2) > Math.pow(phi, 2) + v) {
+            B = Math.log(Math.pow(delta, 2) - Math.pow(phi, 2) - v);
+        } else {
+            double k = 1;
+            B = a - (k * Math.abs(tau));
+            while (f(B, delta, phi, v, a) < 0) {
+                k++;
+                B = a - (k * Math.abs(tau));
+            }
+        }
+        double fA = f(A, delta, phi, v, a);
+        double fB = f(B, delta, phi, v, a);
+        while (Math.abs(B - A) > CONVERGENCE_TOLERANCE) {
+            double C = A + (((A - B) * fA) / (fB - fA));
+            double fC = f(C, delta, phi, v, a);
+            if (fC * fB < 0) {
+                A = B;
+                fA = fB;
+            } else {
+                fA = fA / 2.0;
+            }
+            B = C;
+            fB = fC;
+        }
+        double newSigma = Math.exp(A / 2.0);
+        double phiStar = newDeviation(phi, newSigma);
+        double newPhi = 1.0 / Math.sqrt((1.0 / Math.pow(phiStar, 2)) + (1.0 / v));
+        rating.setGlicko2Rating(mu[t] + (Math.pow(newPhi, 2) * outcomeSum[t]));
+        rating.setGlicko2RatingDeviation(newPhi);
+        rating.setVolatility(newSigma);
+        rating.incrementNumberOfResults(results[t]);
+    }
+
+    private double f(double x, double delta, double phi, double v, double a) {
+        return (Math.exp(x) * (Math.pow(delta, 2) - Math.pow(phi, 2) - v - Math.exp(x))
+                / (2.0 * Math.pow(Math.pow(phi, 2) + v + Math.exp(x), 2))) - ((x - a) / Math.pow(tau, 2));
+    }
+
+    private static double g(double deviation) {
+        return 1.0 / (Math.sqrt(1.0 + (3.0 * Math.pow(deviation, 2) / Math.pow(Math.PI, 2))));
+    }
+
+    private static double e(double rating, double opponentRating, double opponentDeviation) {
+        return 1.0 / (1.0 + Math.exp(-1.0 * g(opponentDeviation) * (rating - opponentRating)));
+    }
+
+    private static double newDeviation(double phi, double sigma) {
+        return Math.sqrt(Math.pow(phi, 2) + Math.pow(sigma, 2));
+    }
+}
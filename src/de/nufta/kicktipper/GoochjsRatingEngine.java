@@ -0,0 +1,52 @@
+package de.nufta.kicktipper;
+
+import org.goochjs.glicko2.Rating;
+import org.goochjs.glicko2.RatingCalculator;
+import org.goochjs.glicko2.RatingPeriodResults;
+
+/**
+ * {@link RatingEngine} on the org.goochjs.glicko2 library
+ */
+class GoochjsRatingEngine implements RatingEngine {
+
+    private final RatingCalculator calc;
+    private RatingPeriodResults rpr = new RatingPeriodResults();
+
+    GoochjsRatingEngine(final RatingCalculator calc) {
+        this.calc = calc;
+    }
+
+    @Override
+    public void addParticipant(Team team) {
+        rpr.addParticipants(team.getRating());
+    }
+
+    @Override
+    public void addGame(Team team1, Team team2, int score1, int score2) {
+        Rating rating1 = team1.getRating();
+        Rating rating2 = team2.getRating();
+        int result = score1 - score2;
+        if (result == 0) {
+            rpr.addDraw(rating1, rating2);
+        } else if (result > 0) {
+            rpr.addResult(rating1, rating2);
+        } else { // (result < 0)
+            rpr.addResult(rating2, rating1);
+        }
+    }
+
+    @Override
+    public void updateRatings() {
+        calc.updateRatings(rpr);
+    }
+
+    @Override
+    public void settle() {
+        // every participant is rated in every period
+    }
+
+    @Override
+    public void reset() {
+        rpr = new RatingPeriodResults();
+    }
+}
@@ -0,0 +1,280 @@
+package de.nufta.kicktipper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rated games of every pair of teams of a {@link TournamentContext}, so the previous meetings of two teams are a
+ * hash lookup instead of a scan over all seasons. Games are recorded while their season is rated, keyed by the
+ * unordered pair of team ids and ordered by rating period like the {@link RatingHistory}; a query for a pair in
+ * either orientation returns the meetings seen from its first team, like {@link Game#createReverseGame()} would.
+ * <p>
+ * The first query after a recording freezes all meetings into flat arrays behind an open addressing table keyed by
+ * the primitive pair. Queries read the frozen table without a lock and return a view on its arrays, so a lookup
+ * allocates nothing but the view. Recording drops the frozen table, which is why recording and querying should not
+ * alternate game by game.
+ */
+class HeadToHead {
+
+    /**
+     * The meetings of one pair in period order, while recording
+     */
+    private static final class Meetings {
+        long[] keys = new long[4];
+        int[] rows = new int[4];
+        int size;
+    }
+
+    private final GameStore store;
+    private final Map<Long, Meetings> pairs = new HashMap<>();
+    /** the meetings as of the last recording, <code>null</code> until the next query freezes them */
+    private volatile Frozen frozen;
+
+    HeadToHead(final GameStore store) {
+        this.store = store;
+    }
+
+    private static long pair(int team1, int team2) {
+        return team1 < team2 ? ((long) team1 << 32) | team2 : ((long) team2 << 32) | team1;
+    }
+
+    /**
+     * Record a rated game, after its ratings are stored. Recording a game again has no effect.
+     */
+    synchronized void record(int row) {
+        long key = RatingHistory.key(store.getSeason(row), store.getPhaseNumber(row), store.getDay(row));
+        Meetings meetings = pairs.computeIfAbsent(pair(store.getTeam1(row), store.getTeam2(row)),
+                p -> new Meetings());
+        int i = meetings.size;
+        if (i > 0 && meetings.keys[i - 1] >= key) {
+            // out of order, only when results are added for an earlier period
+            i = upperBound(meetings.keys, 0, meetings.size, key);
+            for (int j = i - 1; j >= 0 && meetings.keys[j] == key; j--) {
+                if (meetings.rows[j] == row) {
+                    return;
+                }
+            }
+        }
+        if (meetings.size == meetings.keys.length) {
+            meetings.keys = Arrays.copyOf(meetings.keys, meetings.size * 2);
+            meetings.rows = Arrays.copyOf(meetings.rows, meetings.size * 2);
+        }
+        System.arraycopy(meetings.keys, i, meetings.keys, i + 1, meetings.size - i);
+        System.arraycopy(meetings.rows, i, meetings.rows, i + 1, meetings.size - i);
+        meetings.keys[i] = key;
+        meetings.rows[i] = row;
+        meetings.size++;
+        frozen = null;
+    }
+
+    /**
+     * @return the index of the first key in [from, to) greater than the given one
+     */
+    private static int upperBound(long[] keys, int from, int to, long key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return all meetings of two teams, seen from the first one
+     */
+    Range get(Team team1, Team team2) {
+        return get(team1.getId(), team2.getId(), Long.MAX_VALUE);
+    }
+
+    /**
+     * @param before only meetings of rating periods before this {@link RatingHistory#key(int, int, int) key}
+     * @return the meetings of two teams before the given period, seen from the first one
+     */
+    Range get(int team1, int team2, long before) {
+        Frozen table = frozen;
+        if (table == null) {
+            table = freeze();
+        }
+        int slot = table.find(pair(team1, team2));
+        if (slot < 0) {
+            return Range.EMPTY;
+        }
+        int offset = table.offsets[slot];
+        int end = offset + table.lengths[slot];
+        if (before != Long.MAX_VALUE) {
+            end = upperBound(table.keys, offset, end, before - 1);
+        }
+        return end == offset ? Range.EMPTY : new Range(table, offset, end - offset, team1 > team2);
+    }
+
+    /**
+     * @return the frozen meetings, built from the recordings if they changed since the last freeze
+     */
+    private synchronized Frozen freeze() {
+        Frozen table = frozen;
+        if (table == null) {
+            table = new Frozen(store, pairs);
+            frozen = table;
+        }
+        return table;
+    }
+
+    /**
+     * All meetings of all pairs in flat arrays, the meetings of a pair in one run in period order and seen from the
+     * team with the lower id. Immutable.
+     */
+    private static final class Frozen {
+        /** the pairs by open addressing, -1 = free slot */
+        private final long[] slots;
+        private final int[] offsets, lengths;
+        private final int mask;
+
+        private final long[] keys;
+        private final int[] rows;
+        /** whether the team with the lower id is the home team of the game */
+        private final boolean[] lowHome;
+        private final int[] scoresLow, scoresHigh;
+        private final double[] beforeLow, beforeHigh, afterLow, afterHigh;
+
+        Frozen(GameStore store, Map<Long, Meetings> pairs) {
+            int capacity = Integer.highestOneBit(Math.max(4, pairs.size() * 2 - 1)) << 1;
+            slots = new long[capacity];
+            Arrays.fill(slots, -1L);
+            offsets = new int[capacity];
+            lengths = new int[capacity];
+            mask = capacity - 1;
+            int total = 0;
+            for (Meetings meetings : pairs.values()) {
+                total += meetings.size;
+            }
+            keys = new long[total];
+            rows = new int[total];
+            lowHome = new boolean[total];
+            scoresLow = new int[total];
+            scoresHigh = new int[total];
+            beforeLow = new double[total];
+            beforeHigh = new double[total];
+            afterLow = new double[total];
+            afterHigh = new double[total];
+            int offset = 0;
+            for (Map.Entry<Long, Meetings> entry : pairs.entrySet()) {
+                long pair = entry.getKey();
+                Meetings meetings = entry.getValue();
+                int slot = hash(pair) & mask;
+                while (slots[slot] != -1L) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = pair;
+                offsets[slot] = offset;
+                lengths[slot] = meetings.size;
+                for (int i = 0; i < meetings.size; i++, offset++) {
+                    int row = meetings.rows[i];
+                    boolean home = store.getTeam1(row) < store.getTeam2(row);
+                    keys[offset] = meetings.keys[i];
+                    rows[offset] = row;
+                    lowHome[offset] = home;
+                    scoresLow[offset] = home ? store.getScore1(row) : store.getScore2(row);
+                    scoresHigh[offset] = home ? store.getScore2(row) : store.getScore1(row);
+                    beforeLow[offset] = home ? store.getRatingBefore1(row) : store.getRatingBefore2(row);
+                    beforeHigh[offset] = home ? store.getRatingBefore2(row) : store.getRatingBefore1(row);
+                    afterLow[offset] = home ? store.getRatingAfter1(row) : store.getRatingAfter2(row);
+                    afterHigh[offset] = home ? store.getRatingAfter2(row) : store.getRatingAfter1(row);
+                }
+            }
+        }
+
+        private static int hash(long pair) {
+            long h = pair * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        /**
+         * @return the slot of a pair, -1 if it never met
+         */
+        int find(long pair) {
+            int slot = hash(pair) & mask;
+            long found;
+            while ((found = slots[slot]) != -1L) {
+                if (found == pair) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Meetings of two teams, oldest first, seen from the team the query was made for. A view on frozen meetings,
+     * unaffected by later recordings.
+     */
+    static final class Range {
+
+        static final Range EMPTY = new Range(null, 0, 0, false);
+
+        private final Frozen table;
+        private final int offset;
+        private final int size;
+        /** whether the query was made for the team with the higher id */
+        private final boolean high;
+
+        private Range(Frozen table, int offset, int size, boolean high) {
+            this.table = table;
+            this.offset = offset;
+            this.size = size;
+            this.high = high;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the {@link RatingHistory#key(int, int, int) key} of the rating period of a meeting
+         */
+        long getKey(int i) {
+            return table.keys[offset + i];
+        }
+
+        int getSeason(int i) {
+            return (int) (getKey(i) >>> 32);
+        }
+
+        /**
+         * @return the meeting as a game of the given context, oriented like the query
+         */
+        Game getGame(TournamentContext context, int i) {
+            return new Game(context, table.rows[offset + i], table.lowHome[offset + i] == high);
+        }
+
+        int getScore1(int i) {
+            return high ? table.scoresHigh[offset + i] : table.scoresLow[offset + i];
+        }
+
+        int getScore2(int i) {
+            return high ? table.scoresLow[offset + i] : table.scoresHigh[offset + i];
+        }
+
+        double getRatingBefore1(int i) {
+            return high ? table.beforeHigh[offset + i] : table.beforeLow[offset + i];
+        }
+
+        double getRatingBefore2(int i) {
+            return high ? table.beforeLow[offset + i] : table.beforeHigh[offset + i];
+        }
+
+        double getRatingAfter1(int i) {
+            return high ? table.afterHigh[offset + i] : table.afterLow[offset + i];
+        }
+
+        double getRatingAfter2(int i) {
+            return high ? table.afterLow[offset + i] : table.afterHigh[offset + i];
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package de.nufta.kicktipper;
+
+/**
+ * Minimal JSON writer into a string builder. Separators between members and elements are inserted automatically;
+ * the caller is responsible for balancing the objects and arrays.
+ */
+class JsonWriter {
+
+    private final StringBuilder sb = new StringBuilder();
+    /** a value was written at the current level, so the next one needs a comma */
+    private boolean separate;
+
+    /**
+     * Discard everything written, to write the next document with this writer
+     */
+    JsonWriter clear() {
+        sb.setLength(0);
+        separate = false;
+        return this;
+    }
+
+    JsonWriter beginObject() {
+        separator();
+        sb.append('{');
+        separate = false;
+        return this;
+    }
+
+    JsonWriter endObject() {
+        sb.append('}');
+        separate = true;
+        return this;
+    }
+
+    JsonWriter beginArray() {
+        separator();
+        sb.append('[');
+        separate = false;
+        return this;
+    }
+
+    JsonWriter endArray() {
+        sb.append(']');
+        separate = true;
+        return this;
+    }
+
+    /**
+     * Start a member of an object, followed by its value
+     */
+    JsonWriter name(String name) {
+        separator();
+        quote(name);
+        sb.append(':');
+        separate = false;
+        return this;
+    }
+
+    JsonWriter value(String value) {
+        separator();
+        if (value == null) {
+            sb.append("null");
+        } else {
+            quote(value);
+        }
+        separate = true;
+        return this;
+    }
+
+    JsonWriter value(long value) {
+        separator();
+        sb.append(value);
+        separate = true;
+        return this;
+    }
+
+    /**
+     * Write a number, NaN and infinity as <code>null</code>
+     */
+    JsonWriter value(double value) {
+        separator();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+        separate = true;
+        return this;
+    }
+
+    JsonWriter value(boolean value) {
+        separator();
+        sb.append(value);
+        separate = true;
+        return this;
+    }
+
+    private void separator() {
+        if (separate) {
+            sb.append(',');
+            separate = false;
+        }
+    }
+
+    private void quote(String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
@@ -1,17 +1,23 @@
 
 package de.nufta.kicktipper;
 
-import java.text.DecimalFormat;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
 
 import org.goochjs.glicko2.RatingCalculator;
 
-import de.nufta.kicktipper.Game.Result;
-
 /**
  * @author ulrich.luebke
  *
@@ -29,7 +35,7 @@ public class KickTipper {
 
     // private static final String PRED_GAMES = "blfr_pred.txt";
 
-    private static Mode mode;
+    private final TournamentContext context;
     private final String tournamentName;
     private final String tournamentShortName;
     private final int startYear;
@@ -41,9 +47,47 @@ public class KickTipper {
      */
     private static boolean debug = false;
 
+    /**
+     * Predict the fixtures and tokenize the files of a data directory in parallel
+     */
+    private boolean parallel = true;
+
+    /**
+     * Snapshot of the rated seasons, <code>null</code> to always parse and rate the result files
+     */
+    private Path snapshotFile;
+
+    /**
+     * Directory to read the data files from, <code>null</code> for the bundled files
+     */
+    private DataDirectory dataDirectory;
+
+    /**
+     * File to write the prediction trace to, <code>null</code> for no trace
+     */
+    private Path traceFile;
+
+    /**
+     * Weighting of the historical games, <code>null</code> for the defaults of the mode
+     */
+    private PredictionParameters predictionParameters;
+
+    /**
+     * Rules to tip the fixtures for the most expected points by, <code>null</code> to tip the rounded average score
+     */
+    private KicktippRules tipRules;
+    private TipOptimizer tipOptimizer;
+
+    /** number of fixtures whose predictions are kept */
+    private static final int PREDICTION_CACHE_SIZE = 4096;
+
     List<Season> seasons = new ArrayList<Season>();
     RatingCalculator calc = new RatingCalculator();
     Season predictions;
+    /** created on first prediction, kept up to date by {@link #addResults(Reader)} */
+    private PredictionIndex index;
+    /** predictions of the current rating state, see {@link #predictFixtures()} */
+    private final PredictionCache predictionCache;
 
     /**
      * Creates a new Instance
@@ -56,9 +100,20 @@ public class KickTipper {
      * @param toYear use historical data up to and including this year
      * @param predictionYear year of the tournament to predict
      */
-    KickTipper(final String tournamentName, final String tournamentShortName, final int startYear,
+    KickTipper(final Mode mode, final String tournamentName, final String tournamentShortName, final int startYear,
             final int endYear, final int predictionYear) {
+        this(mode, RatingEngine.Kind.GLICKO2, tournamentName, tournamentShortName, startYear, endYear,
+                predictionYear);
+    }
 
+    /**
+     * Creates a new Instance rating with the given kind of rating engine
+     */
+    KickTipper(final Mode mode, final RatingEngine.Kind ratingEngine, final String tournamentName,
+            final String tournamentShortName, final int startYear, final int endYear, final int predictionYear) {
+
+        this.context = new TournamentContext(mode, ratingEngine);
+        this.predictionCache = new PredictionCache(context, PREDICTION_CACHE_SIZE);
         this.tournamentName = tournamentName;
         this.tournamentShortName = tournamentShortName;
         this.startYear = startYear;
@@ -66,11 +121,18 @@ public class KickTipper {
         this.predictionYear = predictionYear;
     }
 
-    private void run() {
+    void run() {
         loadSeasons();
         loadPredictions();
     }
 
+    /**
+     * Open a data file of this tournament
+     */
+    Reader openData(String fileName) {
+        return new InputStreamReader(KickTipper.class.getResourceAsStream("data/" + fileName), StandardCharsets.UTF_8);
+    }
+
     /**
      * Enable / disable debug output
      */
@@ -82,161 +144,455 @@ public class KickTipper {
         return debug;
     }
 
+    /**
+     * Enable / disable parallel predictions. Both modes produce identical results.
+     */
+    void setParallel(boolean b) {
+        parallel = b;
+    }
+
+    /**
+     * Restore the rated seasons from a snapshot file instead of parsing and rating the result files. The snapshot is
+     * written after loading if it is missing or does not match the result files any more.
+     */
+    void setSnapshotFile(Path file) {
+        snapshotFile = file;
+    }
+
+    /**
+     * Read the result and prediction files from a directory instead of the bundled data. Every result file of the
+     * years from start to end year found there is used, so gaps in the archive are skipped.
+     */
+    void setDataDirectory(Path directory) {
+        dataDirectory = new DataDirectory(directory, tournamentShortName);
+    }
+
+    /**
+     * Write a binary trace of the games every prediction is averaged from, see {@link PredictionTrace}. Unlike the
+     * debug output this is cheap enough for full runs; {@link TraceRenderer} prints it.
+     */
+    void setTraceFile(Path file) {
+        traceFile = file;
+    }
+
+    /**
+     * Predict with other than the default parameters, e.g. the best ones of a {@link #sweep(List, int)}
+     */
+    void setPredictionParameters(PredictionParameters parameters) {
+        predictionParameters = parameters;
+        predictionCache.clear();
+    }
+
+    /**
+     * Tip the fixtures for the most expected points by the given rules instead of the rounded average score of the
+     * historical games, see {@link TipOptimizer}. Backtests and sweeps then score by these rules as well.
+     *
+     * @param rules the rules of the kicktipp round, <code>null</code> to tip the average score
+     */
+    void setTipRules(KicktippRules rules) {
+        tipRules = rules;
+        tipOptimizer = rules != null ? new TipOptimizer(rules) : null;
+        predictionCache.clear();
+    }
+
+    /**
+     * Drop the cached predictions, so the next prediction searches the historical games for every fixture
+     */
+    void clearPredictionCache() {
+        predictionCache.clear();
+    }
+
+    PredictionParameters getPredictionParameters() {
+        return predictionParameters != null ? predictionParameters : PredictionParameters.forMode(getMode());
+    }
+
+    private String getSeasonFileName(int year) {
+        return tournamentShortName + "_" + year + "_res.txt";
+    }
+
+    private int nextYear(int year) {
+        switch (getMode()) {
+            case WORLD_CUP:
+                return year + 4;
+            default:
+                return year + 1;
+        }
+    }
+
     private void loadSeasons() {
-        int year = startYear;
-        Season previousSeason = null;
-        final String resultFilePrefix = tournamentShortName + "_";
-        final String resultFilePostfix = "_res.txt";
-        while (year <= endYear) {
-            final String seasonFileName = resultFilePrefix + year + resultFilePostfix;
-            SeasonParser parser = new SeasonParser(year, seasonFileName, SeasonParser.SEASON_MODE, calc,
-                    previousSeason);
-            switch (mode) {
-                case LEAGUE: {
-                    year++;
-                    break;
+        long fingerprint = 0;
+        if (snapshotFile != null) {
+            fingerprint = getFingerprint();
+            try {
+                List<Season> restored = Snapshot.read(snapshotFile, fingerprint, context, calc);
+                if (restored != null) {
+                    seasons.addAll(restored);
+                    return;
                 }
-                case WORLD_CUP: {
-                    year += 4;
-                    break;
+                if (isDebug()) {
+                    System.out.println("Snapshot " + snapshotFile + " missing or stale, parsing result files");
                 }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not read snapshot " + snapshotFile + ": " + e);
             }
-            Season s = parser.parse();
-            s.rate();
-            if (mode.equals(Mode.WORLD_CUP)) {
-                List<Game> games = s.getGames();
-                WorldRepository worldRepository = WorldRepository.getInstance();
-                for (Game game : games) {
-                    worldRepository.rate(game.getTeam1().getName(), game.getTeam2().getName(), game.getScore1(), game.getScore2());
+        }
+        if (dataDirectory != null) {
+            loadSeasons(dataDirectory);
+        } else {
+            for (int year = startYear; year <= endYear; year = nextYear(year)) {
+                final String seasonFileName = getSeasonFileName(year);
+                SeasonParser parser = new SeasonParser(context, year, seasonFileName, SeasonParser.SEASON_MODE, calc,
+                        getLatestSeason());
+                addSeason(parser.parse(openData(seasonFileName)));
+            }
+        }
+        if (snapshotFile != null) {
+            try {
+                Snapshot.write(snapshotFile, fingerprint, context, seasons);
+            } catch (IOException e) {
+                System.err.println("Could not write snapshot " + snapshotFile + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Load the result files of a data directory. The files are read and tokenized in parallel, but parsed and rated
+     * strictly in chronological order: teams new in a season start with the relegation rating of the season before.
+     */
+    private void loadSeasons(DataDirectory directory) {
+        SortedMap<Integer, Path> files = getSeasonFiles(directory);
+        final boolean worldCup = getMode() == Mode.WORLD_CUP;
+        List<ForkJoinTask<SeasonTokens>> tokenized = new ArrayList<>();
+        if (parallel) {
+            for (Path file : files.values()) {
+                tokenized.add(ForkJoinPool.commonPool().submit(() -> DataDirectory.tokenize(file, worldCup)));
+            }
+        }
+        int i = 0;
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            SeasonTokens tokens = parallel ? tokenized.get(i++).join()
+                    : DataDirectory.tokenize(file.getValue(), worldCup);
+            SeasonParser parser = new SeasonParser(context, file.getKey(), file.getValue().toString(),
+                    SeasonParser.SEASON_MODE, calc, getLatestSeason());
+            addSeason(parser.parse(tokens));
+        }
+    }
+
+    private SortedMap<Integer, Path> getSeasonFiles(DataDirectory directory) {
+        SortedMap<Integer, Path> files = null;
+        try {
+            files = directory.getSeasonFiles(startYear, endYear);
+        } catch (IOException e) {
+            System.err.println("Error while reading directory \"" + directory.getDirectory() + "\"");
+            e.printStackTrace();
+            System.exit(66);
+        }
+        if (files.isEmpty()) {
+            System.err.println("No result files " + getSeasonFileName(startYear) + " to "
+                    + getSeasonFileName(endYear) + " in \"" + directory.getDirectory() + "\"");
+            System.exit(66);
+        }
+        return files;
+    }
+
+    /**
+     * Rate a parsed season and append it
+     */
+    private void addSeason(Season s) {
+        s.rate();
+        if (getMode().equals(Mode.WORLD_CUP)) {
+            List<Game> games = s.getGames();
+            WorldRepository worldRepository = context.getWorldRepository();
+            for (Game game : games) {
+                game.recordRatedDifference();
+                worldRepository.rate(game.getTeam1().getName(), game.getTeam2().getName(), game.getScore1(), game.getScore2());
+            }
+        }
+        if (isDebug()) {
+            System.out.println("SeasonParser: " + s.toString());
+        }
+        seasons.add(s);
+    }
+
+    private Season getLatestSeason() {
+        return seasons.isEmpty() ? null : seasons.get(seasons.size() - 1);
+    }
+
+    /**
+     * Checksum over the tournament settings, the rating engine and the contents of all result files, identifying the
+     * data a snapshot was built from and how it was rated
+     */
+    private long getFingerprint() {
+        CRC32 crc = new CRC32();
+        crc.update((getMode() + " " + context.getRatingEngine() + " " + startYear + " " + endYear)
+                .getBytes(StandardCharsets.UTF_8));
+        if (dataDirectory != null) {
+            try {
+                for (Path file : dataDirectory.getSeasonFiles(startYear, endYear).values()) {
+                    crc.update(file.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                    crc.update(DataDirectory.map(file));
                 }
+            } catch (IOException | RuntimeException e) {
+                return -1;
             }
-            if (isDebug()) {
-                System.out.println("SeasonParser: " + s.toString());
+            return crc.getValue();
+        }
+        char[] buf = new char[8192];
+        for (int year = startYear; year <= endYear; year = nextYear(year)) {
+            String seasonFileName = getSeasonFileName(year);
+            crc.update(seasonFileName.getBytes(StandardCharsets.UTF_8));
+            try (Reader reader = openData(seasonFileName)) {
+                int n;
+                while ((n = reader.read(buf)) > 0) {
+                    crc.update(new String(buf, 0, n).getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException | RuntimeException e) {
+                // unreadable data never matches a snapshot, parsing will report the error
+                return -1;
             }
-            seasons.add(s);
-            previousSeason = s;
         }
+        return crc.getValue();
     }
 
     private void loadPredictions() {
         String predictionFileName = tournamentShortName + "_pred.txt";
-        SeasonParser parser = new SeasonParser(predictionYear, predictionFileName, SeasonParser.PREDICT_MODE,
-                calc, seasons.get(seasons.size() - 1));
-        predictions = parser.parse();
+        if (dataDirectory != null) {
+            Path file = dataDirectory.getPredictionFile();
+            SeasonParser parser = new SeasonParser(context, predictionYear, file.toString(),
+                    SeasonParser.PREDICT_MODE, calc, getLatestSeason());
+            predictions = parser.parse(DataDirectory.tokenize(file, getMode() == Mode.WORLD_CUP));
+            return;
+        }
+        SeasonParser parser = new SeasonParser(context, predictionYear, predictionFileName,
+                SeasonParser.PREDICT_MODE, calc, seasons.get(seasons.size() - 1));
+        predictions = parser.parse(openData(predictionFileName));
     }
 
-    private void predict() {
-        ArrayList<Game> allGames = new ArrayList<Game>();
+    /**
+     * Index all historical games usable for predictions
+     */
+    private PredictionIndex createPredictionIndex() {
+        PredictionIndex.History history = new PredictionIndex.History();
         for (Season season : seasons) {
             // In the first season the glicko rating is not yet accurate, so leave that out.
             if (season.year > this.startYear) {
                 List<Game> games = season.getGames();
-                allGames.addAll(games);
+                for (Game game : games) {
+                    history.add(game);
+                }
                 if (Mode.WORLD_CUP.equals(getMode())) {
                     for (Game game : games) {
-                        allGames.add(game.createReverseGame());
+                        history.addReverse(game);
                     }
                 }
             }
         }
-        List<Game> predGames = predictions.getGames();
+        return new PredictionIndex(context, history, false);
+    }
+
+    /**
+     * Add the results of a finished matchday to the latest season, read in the format of the result files. The games
+     * are rated as one rating period and added to the prediction index, without reparsing or replaying the history.
+     * Games the season already contains are skipped while parsing, so sending a matchday again creates no rows in the
+     * game store, see {@link Season#addResults(List)}.
+     */
+    void addResults(Reader reader) {
+        Season season = seasons.get(seasons.size() - 1);
+        Season previousSeason = seasons.size() > 1 ? seasons.get(seasons.size() - 2) : null;
+        SeasonParser parser = new SeasonParser(context, season.year, "results of " + season.year,
+                SeasonParser.SEASON_MODE, calc, previousSeason);
+        parser.skipContained(season);
+        List<Game> games = season.addResults(parser.parse(reader).getGames());
+        if (games.isEmpty()) {
+            return;
+        }
+        if (getMode().equals(Mode.WORLD_CUP)) {
+            WorldRepository worldRepository = context.getWorldRepository();
+            for (Game game : games) {
+                game.recordRatedDifference();
+                worldRepository.rate(game.getTeam1().getName(), game.getTeam2().getName(), game.getScore1(),
+                        game.getScore2());
+            }
+            // the region ratings changed, and with them the corrected difference of every indexed game
+            index = null;
+        } else if (index != null && season.year > startYear) {
+            index.add(games);
+        }
+    }
+
+    void predict() {
         System.out.println("Predictions for \"" + tournamentName + " " + predictionYear + "\"");
-        for (Game pGame : predGames) {
-            double rating1 = pGame.getTeam1().getRating().getRating();
-            pGame.setRatingBefore1(rating1);
-            double rating2 = pGame.getTeam2().getRating().getRating();
-            pGame.setRatingBefore2(rating2);
-            final double diff =  pGame.getCorrectedRatingDifference();
-            allGames.sort((g1, g2) -> {
-                double diff1 = g1.getCorrectedRatingDifference();
-                double diff2 = g2.getCorrectedRatingDifference();
-                double d1 = Math.abs(diff - diff1);
-                double d2 = Math.abs(diff - diff2);
-                int compareTo = new Double(d1).compareTo(new Double(d2));
-                return compareTo;
-            });
-            int target = 6;
-            int cnt = 0;
-            final int maxQualityDifference = mode.equals(Mode.LEAGUE) ? 20 : 10;
-            final int maxRatingDifference = 700;
-
-            List<Game> selected = new ArrayList<>();
-            HashSet<Integer> selectedIDs = new HashSet<>();
-
-            int[] results = new int[Game.Result.values().length];
-            for (Game mGame : allGames) {
-                double tDiff = mGame.getCorrectedRatingDifference();
-                double quality = Math.abs(tDiff - diff);
-                double rDiff = Math.abs(mGame.getRatingBefore1()-pGame.getTeam1().getRating().getRating());
-                if (cnt++ >= target && (quality > maxQualityDifference || rDiff > maxRatingDifference)) {
-                    break;
-                }
-                Result result = mGame.getResult();
-                results[result.ordinal()]++;
-                if (!selectedIDs.contains(mGame.getID()) ) {
-                    selected.add(mGame);
-                    selectedIDs.add(mGame.getID());
-                }
+        String[] debugOutput = predictFixtures();
+        if (debugOutput != null) {
+            for (String output : debugOutput) {
+                System.out.print(output);
             }
-            int leeway = selected.size() / 5;
-            int max = Math.max(results[0], Math.max(results[1], results[2]));
-            for (Iterator<Game> i = selected.iterator(); i.hasNext();) {
-                Game game = i.next();
-                if (results[game.getResult().ordinal()] < max - leeway) {
-                    i.remove();
-                }
+        }
+        System.out.println(predictions.toString());
+    }
+
+    /**
+     * Predict the fixtures, the predicted scores are stored in the games of {@link #predictions}. Fixtures predicted
+     * before without a change of the ratings since are taken from the {@link PredictionCache}, unless the debug output
+     * or a trace is written.
+     *
+     * @return the debug output per fixture if debug is enabled, otherwise <code>null</code>
+     */
+    String[] predictFixtures() {
+        if (index == null) {
+            index = createPredictionIndex();
+        }
+        ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : null;
+        PredictionEngine engine = new PredictionEngine(index, getPredictionParameters(), context.getHeadToHead(),
+                pool);
+        engine.setCache(predictionCache);
+        engine.setTipOptimizer(tipOptimizer);
+        if (traceFile == null) {
+            return engine.predict(predictions.getGames());
+        }
+        PredictionTrace trace;
+        try {
+            trace = new PredictionTrace(traceFile, context);
+        } catch (IOException e) {
+            System.err.println("Could not write trace " + traceFile + ": " + e);
+            return engine.predict(predictions.getGames());
+        }
+        engine.setTrace(trace);
+        try {
+            return engine.predict(predictions.getGames());
+        } finally {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                System.err.println("Could not write trace " + traceFile + ": " + e);
             }
+        }
+    }
 
-            double home = 0, away = 0;
-            final double gameBaseFactor = 1.0;
-            final double qualityBaseFactor = 0.5;
-            double divider = 0;
-            for (Game mGame : selected) {
-                double tDiff = mGame.getCorrectedRatingDifference();
-                double quality = Math.abs(tDiff - diff);
-                if (cnt++ >= target && quality > maxQualityDifference) {
-                    break;
-                }
-                double qualityfactor = (maxQualityDifference - quality) * (qualityBaseFactor / maxQualityDifference);
-                if (debug) {
-                    System.out.print("Quality: " + (Math.round(quality)) + ", Factor "
-                            + new DecimalFormat("0.00").format(gameBaseFactor + qualityfactor) + " ->");
-                    System.out.println(mGame);
-                }
-                home += (mGame.getScore1() * (gameBaseFactor + qualityfactor));
-                away += (mGame.getScore2() * (gameBaseFactor + qualityfactor));
-                divider += (gameBaseFactor + qualityfactor);
+    /**
+     * Export the games of all seasons and the fixtures to predict with their ratings, see {@link GameExport}. The
+     * fixtures are exported with their predicted scores, so they should be predicted first.
+     *
+     * @param file the export file, replaced if it exists
+     * @param format CSV or JSON Lines
+     */
+    void export(Path file, GameExport.Format format) {
+        try (GameExport export = new GameExport(file, format)) {
+            for (Season season : seasons) {
+                export.write(season, GameExport.RESULT);
             }
-            home /= divider;
-            away /= divider;
-            double goalDiff = away - home;
-            pGame.setScore1((int) Math.round(home));
-            pGame.setScore2((int) Math.round(pGame.getScore1() + goalDiff));
-            if (debug) {
-                System.out.println("----> Predicted Result: " + pGame + "  GoalDiff:"
-                        + new DecimalFormat("0.00").format(goalDiff));
-                System.out.println("\n\n");
+            if (predictions != null) {
+                export.write(predictions, GameExport.PREDICTION);
             }
+            if (isDebug()) {
+                System.out.println("Exported " + export.getRecords() + " games to " + file);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write export " + file + ": " + e);
         }
-        System.out.println(predictions.toString());
     }
 
-    public static Mode getMode() {
-        return mode;
+    /**
+     * Replay the historical seasons matchday by matchday, predicting every game from the games before it, and print
+     * how the predictions would have scored by the kicktipp rules, the standard ones unless tip rules are set
+     */
+    void backtest() {
+        ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : null;
+        Backtest backtest = createBacktest();
+        System.out.println("Backtest of \"" + tournamentName + " " + startYear + "-" + endYear + "\", "
+                + getPredictionParameters());
+        System.out.print(backtest.run(getPredictionParameters(), pool));
+    }
+
+    private Backtest createBacktest() {
+        Backtest backtest = new Backtest(context, seasons, startYear,
+                tipRules != null ? tipRules : KicktippRules.STANDARD);
+        backtest.setOptimizeTips(tipRules != null);
+        return backtest;
+    }
+
+    /**
+     * Backtest the candidates, see {@link ParameterSweep}, and print the best ones
+     *
+     * @param candidates parameters to try, e.g. from {@link ParameterSweep#grid} or {@link ParameterSweep#random}
+     * @param top number of candidates to print
+     * @return the best candidate, the current parameters if there are no candidates
+     */
+    PredictionParameters sweep(List<PredictionParameters> candidates, int top) {
+        if (candidates.isEmpty()) {
+            System.err.println("No candidates to sweep");
+            return getPredictionParameters();
+        }
+        ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : null;
+        Backtest backtest = createBacktest();
+        List<ParameterSweep.Evaluation> evaluations = new ParameterSweep(backtest).run(candidates, pool);
+        System.out.println("Parameter sweep of \"" + tournamentName + " " + startYear + "-" + endYear + "\", "
+                + candidates.size() + " candidates");
+        System.out.print(ParameterSweep.format(evaluations, top));
+        return evaluations.get(0).parameters;
+    }
+
+    /**
+     * Simulate the rest of the tournament from the fixtures to predict and the games of the prediction year played so
+     * far, and print the probabilities of group placings, knockout rounds and winning the tournament.
+     *
+     * @param runs number of simulated tournaments
+     * @param seed seed of the random numbers
+     */
+    void simulate(int runs, long seed) {
+        if (index == null) {
+            index = createPredictionIndex();
+        }
+        ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : null;
+        Season latest = seasons.get(seasons.size() - 1);
+        List<Game> played = latest.year == predictionYear ? latest.getGames() : new ArrayList<Game>();
+        TournamentSimulator simulator = new TournamentSimulator(context, new PredictionEngine(index, getPredictionParameters(),
+                context.getHeadToHead(), pool), played, predictions.getGames());
+        System.out.println("Simulation of \"" + tournamentName + " " + predictionYear + "\", " + runs + " runs");
+        System.out.println(simulator.simulate(runs, seed, pool));
+    }
+
+    public Mode getMode() {
+        return context.getMode();
+    }
+
+    String getTournamentName() {
+        return tournamentName;
+    }
+
+    String getTournamentShortName() {
+        return tournamentShortName;
+    }
+
+    int getPredictionYear() {
+        return predictionYear;
+    }
+
+    TournamentContext getContext() {
+        return context;
     }
     
     public void printRanking(String...teamNames) {
+        for (Team team : getRanking(teamNames)) {
+            System.out.println(team);
+        }
+    }
+
+    /**
+     * @param teamNames teams to rank, all teams if none are given
+     * @return the teams by descending rating
+     */
+    List<Team> getRanking(String... teamNames) {
         HashSet<String> filterSet = new HashSet<>();
         filterSet.addAll(Arrays.asList(teamNames));
-        List<Team> allTeams = TeamRepository.getInstance().getAllTeams();
+        List<Team> allTeams = context.getTeamRepository().getAllTeams();
         allTeams.sort((t1, t2) -> {
             return new Double(t2.getRating().getRating()).compareTo(new Double(t1.getRating().getRating()));
-        });;
-        for (Team team : allTeams) {
-            if (filterSet.isEmpty() || filterSet.contains(team.getName())) {
-                System.out.println(team);              
-            }
+        });
+        if (!filterSet.isEmpty()) {
+            allTeams.removeIf(team -> !filterSet.contains(team.getName()));
         }
+        return allTeams;
     }
     
     /**
@@ -245,17 +601,27 @@ public class KickTipper {
     public static void main(String[] args) {
         boolean debug = false;
         setDebug(debug);
-        //setMode(Mode.LEAGUE);
-        //KickTipper tipper = new KickTipper( "Bundesliga Frauen", "blfr", 2013, 2017, 2017);
-        setMode(Mode.WORLD_CUP);
-        KickTipper tipper = new KickTipper("Weltmeisterschaft", "wm", 2002, 2018, 2018);
+        Metrics.registerMBean();
+        //KickTipper tipper = new KickTipper(Mode.LEAGUE, "Bundesliga Frauen", "blfr", 2013, 2017, 2017);
+        KickTipper tipper = new KickTipper(Mode.WORLD_CUP, "Weltmeisterschaft", "wm", 2002, 2018, 2018);
+        //tipper.setDataDirectory(java.nio.file.Paths.get("data"));
+        //tipper.setSnapshotFile(java.nio.file.Paths.get("wm.snapshot"));
+        //tipper.setTraceFile(java.nio.file.Paths.get("wm.trace"));
         tipper.run();
         tipper.predict();
+        //tipper.export(java.nio.file.Paths.get("wm.csv"), GameExport.Format.CSV);
+        //tipper.simulate(1000000, 4711);
+        //tipper.setTipRules(KicktippRules.STANDARD);
+        //tipper.backtest();
+        //tipper.setPredictionParameters(tipper.sweep(ParameterSweep.grid(new int[] { 4, 6, 8 },
+        //        new double[] { 5, 10, 20 }, new double[] { 500, 700 }, new double[] { 1.0 },
+        //        new double[] { 0.25, 0.5, 1.0 }, new int[] { 3, 5, 8 }, new double[] { 0, 0.5 }), 10));
+        //System.out.print(Metrics.dump());
         
         //System.out.println();
         //tipper.printRanking();
-        //System.out.println(WorldRepository.getInstance().getRegions());
-        //System.out.println(WorldRepository.getInstance().getRanking());
+        //System.out.println(tipper.getContext().getWorldRepository().getRegions());
+        //System.out.println(tipper.getContext().getWorldRepository().getRanking());
         
 //        tipper.printRanking("Russland", "Saudi Arabien", "Uruguay", "Ägypten");
 //        System.out.println();
@@ -274,9 +640,4 @@ public class KickTipper {
 //        tipper.printRanking("Japan", "Kolumbien", "Polen", "Senegal");
         
     }
-
-    private static void setMode(final Mode mode) {
-        KickTipper.mode = mode;
-        
-    }
 }
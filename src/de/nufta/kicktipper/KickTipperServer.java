@@ -0,0 +1,318 @@
+package de.nufta.kicktipper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * Resident prediction service. The configured competitions are loaded, rated and predicted once; afterwards queries
+ * are answered from memory over a local HTTP/JSON API:
+ *
+ * <pre>
+ * GET /competitions                  the configured competitions
+ * GET /predictions/{id}              predicted scores of the fixtures of a competition
+ * GET /ranking/{id}[?teams=a,b,...]  teams by rating, optionally only the given ones
+ * GET /regions/{id}                  world cup regions by rating
+ * GET /stats                         number of requests and latency percentiles per endpoint
+ * GET /metrics                       text dump of the parse, rate and predict {@link Metrics}
+ * </pre>
+ *
+ * The id of a competition is its short name ("wm", "blfr"). Requests are handled on a fixed thread pool; the state is
+ * read-only once loaded, so requests need no locking.
+ */
+class KickTipperServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    /** competitions by id, only modified before the server is started */
+    private final Map<String, KickTipper> competitions = new LinkedHashMap<>();
+    /** predictions by competition id, rendered once when the competition is added */
+    private final Map<String, String> predictions = new HashMap<>();
+    /** request latencies in nanoseconds by endpoint */
+    private final Map<String, Histogram> latencies = new LinkedHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private long startTime;
+
+    /**
+     * Load, rate and predict a competition. Must be called before {@link #start(int, int)}.
+     */
+    void add(KickTipper tipper) {
+        tipper.run();
+        tipper.predictFixtures();
+        String id = tipper.getTournamentShortName();
+        competitions.put(id, tipper);
+        predictions.put(id, renderPredictions(tipper));
+    }
+
+    /**
+     * Start answering requests on the loopback interface
+     *
+     * @param port port to listen on, 0 for any free port
+     * @param threads number of request threads
+     */
+    void start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        addEndpoint("competitions", (id, query) -> renderCompetitions());
+        addEndpoint("predictions", (id, query) -> predictions.get(id));
+        addEndpoint("ranking", (id, query) -> {
+            KickTipper tipper = competitions.get(id);
+            return tipper == null ? null : renderTeams(tipper.getRanking(getTeamNames(query)));
+        });
+        addEndpoint("regions", (id, query) -> {
+            KickTipper tipper = competitions.get(id);
+            if (tipper == null || tipper.getMode() != Mode.WORLD_CUP) {
+                return null;
+            }
+            return renderTeams(tipper.getContext().getWorldRepository().getRankedRegions());
+        });
+        addEndpoint("stats", (id, query) -> renderStats());
+        addEndpoint("metrics", TEXT, (id, query) -> Metrics.dump());
+        Metrics.registerMBean();
+        startTime = System.nanoTime();
+        server.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the server, waiting at most a second for running requests
+     */
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Register an endpoint. The handler gets the path below the endpoint (the competition id) and the query
+     * parameters and returns the response, or <code>null</code> if there is no such resource.
+     */
+    private void addEndpoint(String name, BiFunction<String, Map<String, String>, String> handler) {
+        addEndpoint(name, JSON, handler);
+    }
+
+    private void addEndpoint(String name, String contentType,
+            BiFunction<String, Map<String, String>, String> handler) {
+        Histogram latency = new Histogram();
+        latencies.put(name, latency);
+        String prefix = "/" + name;
+        server.createContext(prefix, exchange -> {
+            long start = System.nanoTime();
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    send(exchange, 405, JSON, error("Only GET is supported"));
+                    return;
+                }
+                String path = exchange.getRequestURI().getPath();
+                String id = path.length() > prefix.length() + 1 ? path.substring(prefix.length() + 1) : "";
+                String response = null;
+                if (path.equals(prefix) || path.charAt(prefix.length()) == '/') {
+                    response = handler.apply(id, parseQuery(exchange.getRequestURI().getRawQuery()));
+                }
+                if (response == null) {
+                    send(exchange, 404, JSON, error("Not found: " + path));
+                } else {
+                    send(exchange, 200, contentType, response);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error while answering " + exchange.getRequestURI());
+                e.printStackTrace();
+                send(exchange, 500, JSON, error(e.toString()));
+            } finally {
+                exchange.close();
+                latency.record(System.nanoTime() - start);
+            }
+        });
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        try {
+            for (String parameter : rawQuery.split("&")) {
+                int eq = parameter.indexOf('=');
+                if (eq > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, eq), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(eq + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return query;
+    }
+
+    private static String[] getTeamNames(Map<String, String> query) {
+        String teams = query.get("teams");
+        if (teams == null || teams.isEmpty()) {
+            return new String[0];
+        }
+        String[] names = teams.split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+        }
+        return names;
+    }
+
+    private static String error(String message) {
+        return new JsonWriter().beginObject().name("error").value(message).endObject().toString();
+    }
+
+    private String renderCompetitions() {
+        JsonWriter json = new JsonWriter().beginArray();
+        for (Map.Entry<String, KickTipper> entry : competitions.entrySet()) {
+            KickTipper tipper = entry.getValue();
+            json.beginObject().name("id").value(entry.getKey()).name("name").value(tipper.getTournamentName())
+                    .name("mode").value(tipper.getMode().name()).name("predictionYear")
+                    .value(tipper.getPredictionYear()).endObject();
+        }
+        return json.endArray().toString();
+    }
+
+    private static String renderPredictions(KickTipper tipper) {
+        JsonWriter json = new JsonWriter().beginArray();
+        for (Game game : tipper.predictions.getGames()) {
+            json.beginObject();
+            if (tipper.getMode() == Mode.WORLD_CUP) {
+                json.name("phase").value(game.getTournamentPhaseName());
+            }
+            json.name("day").value(game.getDay()).name("date").value(game.getDate());
+            json.name("home").value(game.getTeam1().getName()).name("away").value(game.getTeam2().getName());
+            json.name("homeRating").value(Math.round(game.getRatingBefore1()));
+            json.name("awayRating").value(Math.round(game.getRatingBefore2()));
+            json.name("homeGoals").value(game.getScore1()).name("awayGoals").value(game.getScore2());
+            json.endObject();
+        }
+        return json.endArray().toString();
+    }
+
+    private static String renderTeams(List<Team> teams) {
+        JsonWriter json = new JsonWriter().beginArray();
+        for (Team team : teams) {
+            json.beginObject().name("name").value(team.getName()).name("rating")
+                    .value(Math.round(team.getRating().getRating())).name("deviation")
+                    .value(Math.round(team.getRating().getRatingDeviation())).endObject();
+        }
+        return json.endArray().toString();
+    }
+
+    private String renderStats() {
+        JsonWriter json = new JsonWriter().beginObject();
+        json.name("uptimeSeconds").value((System.nanoTime() - startTime) / 1_000_000_000L);
+        json.name("endpoints").beginObject();
+        for (Map.Entry<String, Histogram> entry : latencies.entrySet()) {
+            Histogram latency = entry.getValue();
+            json.name(entry.getKey()).beginObject().name("requests").value(latency.getCount())
+                    .name("meanMicros").value(Math.round(latency.getMean() / 1000))
+                    .name("p50Micros").value(latency.getPercentile(50) / 1000)
+                    .name("p99Micros").value(latency.getPercentile(99) / 1000)
+                    .name("maxMicros").value(latency.getMax() / 1000).endObject();
+        }
+        return json.endObject().endObject().toString();
+    }
+
+    /**
+     * @return one line per endpoint with the number of requests and the latency percentiles
+     */
+    String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : latencies.entrySet()) {
+            Histogram latency = entry.getValue();
+            sb.append(String.format(Locale.ROOT, "%-12s %8d requests  p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms%n",
+                    entry.getKey(), latency.getCount(), latency.getPercentile(50) / 1e6,
+                    latency.getPercentile(99) / 1e6, latency.getMax() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * <pre>
+     * KickTipperServer [-port 8080] [-threads n] [-data directory]
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        String dataDirectory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-data":
+                    dataDirectory = args[++i];
+                    break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(64);
+            }
+        }
+        List<KickTipper> tippers = new ArrayList<>();
+        tippers.add(new KickTipper(Mode.LEAGUE, "Bundesliga Frauen", "blfr", 2013, 2017, 2017));
+        tippers.add(new KickTipper(Mode.WORLD_CUP, "Weltmeisterschaft", "wm", 2002, 2018, 2018));
+
+        KickTipperServer server = new KickTipperServer();
+        for (KickTipper tipper : tippers) {
+            if (dataDirectory != null) {
+                tipper.setDataDirectory(Paths.get(dataDirectory));
+            }
+            server.add(tipper);
+        }
+        server.start(port, threads);
+        System.out.println("Serving " + server.competitions.keySet() + " on http://localhost:" + server.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            System.out.print(server.getStatistics());
+        }));
+    }
+}
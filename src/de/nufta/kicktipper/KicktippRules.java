@@ -0,0 +1,55 @@
+package de.nufta.kicktipper;
+
+/**
+ * Points of a tip by the kicktipp rules: the exact result scores most, otherwise the right goal difference, otherwise
+ * the right tendency (home win, draw or away win). A draw tip with the wrong score only scores the tendency, the goal
+ * difference of draws does not count.
+ */
+class KicktippRules {
+
+    enum Hit {
+        EXACT, DIFFERENCE, TENDENCY, MISS
+    }
+
+    /** the default points of kicktipp: 4 for the result, 3 for the goal difference, 2 for the tendency */
+    static final KicktippRules STANDARD = new KicktippRules(4, 3, 2);
+
+    private final int[] points;
+
+    /**
+     * Creates a new Instance
+     *
+     * @param exact points for the exact result
+     * @param difference points for the right goal difference
+     * @param tendency points for the right tendency
+     */
+    KicktippRules(final int exact, final int difference, final int tendency) {
+        points = new int[] { exact, difference, tendency, 0 };
+    }
+
+    /**
+     * @return how well the tip matches the result
+     */
+    static Hit score(int tip1, int tip2, int result1, int result2) {
+        if (tip1 == result1 && tip2 == result2) {
+            return Hit.EXACT;
+        }
+        int tipDifference = tip1 - tip2;
+        int resultDifference = result1 - result2;
+        if (tipDifference == resultDifference && tipDifference != 0) {
+            return Hit.DIFFERENCE;
+        }
+        if (Integer.signum(tipDifference) == Integer.signum(resultDifference)) {
+            return Hit.TENDENCY;
+        }
+        return Hit.MISS;
+    }
+
+    int getPoints(Hit hit) {
+        return points[hit.ordinal()];
+    }
+
+    int getPoints(int tip1, int tip2, int result1, int result2) {
+        return getPoints(score(tip1, tip2, result1, result2));
+    }
+}
@@ -0,0 +1,378 @@
+package de.nufta.kicktipper;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a flashscore data file into lines and classifies each line with a single pass over its characters. Recognises
+ * exactly the lines the regular expressions of {@link SeasonParser} do, but works on a reused char buffer: no regex
+ * matching, no splitting and no strings except for the text that is actually kept (dates, team and phase names).
+ */
+class LineTokenizer {
+
+    enum Token {
+        TOURNAMENT_PART, FINALS, RESULT_AFTER_90_MIN, DAY, DATE, RESULT, NO_RESULT, EMPTY, TEAM_NAME
+    };
+
+    private static final char[] SPIELTAG = "Spieltag".toCharArray();
+    private static final char[][] TOURNAMENT_PART_STARTS = { "Turnierbaum".toCharArray(), "Tabelle".toCharArray() };
+    private static final char[] FINALS = "Finale".toCharArray();
+    private static final char[] FINALS_THIRD_PLACE = "3. Platz".toCharArray();
+    private static final char[] SEMI_FINALS = "Halbfinale".toCharArray();
+    private static final char[] QUARTER_FINALS = "Viertelfinale".toCharArray();
+    private static final char[] ROUND_OF_SIXTEEN = "Achtelfinale".toCharArray();
+
+    private final Reader reader;
+    private char[] buf = new char[8192];
+    private int pos, limit;
+    /** the previous line ended with '\r', so a following '\n' belongs to it */
+    private boolean skipLF;
+
+    /** trimmed bounds of the current line */
+    private int start, end;
+    private int value1, value2;
+
+    LineTokenizer(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Tokenize characters that are already in memory. The array is used as the buffer and may be overwritten.
+     */
+    LineTokenizer(final char[] chars, final int offset, final int length) {
+        this.reader = null;
+        this.buf = chars;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Advance to the next line. Lines end like in {@link java.io.BufferedReader#readLine()} and are trimmed like
+     * {@link String#trim()}.
+     *
+     * @return false at the end of input
+     */
+    boolean nextLine() throws IOException {
+        int i = pos;
+        for (;;) {
+            if (i == limit) {
+                if (pos > 0) {
+                    System.arraycopy(buf, pos, buf, 0, limit - pos);
+                    i -= pos;
+                    limit -= pos;
+                    pos = 0;
+                }
+                if (!fill()) {
+                    if (i == pos) {
+                        return false;
+                    }
+                    setLine(pos, i);
+                    pos = i;
+                    return true;
+                }
+                continue;
+            }
+            char c = buf[i];
+            if (c == '\n' || c == '\r') {
+                if (c == '\n' && skipLF && i == pos) {
+                    skipLF = false;
+                    pos = ++i;
+                    continue;
+                }
+                skipLF = c == '\r';
+                setLine(pos, i);
+                pos = i + 1;
+                return true;
+            }
+            skipLF = false;
+            i++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            return false;
+        }
+        if (limit == buf.length) {
+            char[] grown = new char[buf.length * 2];
+            System.arraycopy(buf, 0, grown, 0, limit);
+            buf = grown;
+        }
+        int n = reader.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private void setLine(int from, int to) {
+        while (from < to && buf[from] <= ' ') {
+            from++;
+        }
+        while (to > from && buf[to - 1] <= ' ') {
+            to--;
+        }
+        start = from;
+        end = to;
+    }
+
+    /**
+     * @return the current line
+     */
+    String text() {
+        return new String(buf, start, end - start);
+    }
+
+    /**
+     * @return the current line without its first <code>offset</code> characters
+     */
+    String text(int offset) {
+        return new String(buf, start + offset, end - start - offset);
+    }
+
+    /**
+     * @return the first value of the current line: the round for {@link Token#FINALS} (0 = Achtelfinale), the home
+     *         score for {@link Token#RESULT}
+     */
+    int getValue1() {
+        return value1;
+    }
+
+    /**
+     * @return the second value of the current line: the away score for {@link Token#RESULT}
+     */
+    int getValue2() {
+        return value2;
+    }
+
+    /**
+     * @return the value a parser needs of the current line: the round of a {@link Token#FINALS}, the day of a
+     *         {@link Token#DAY} or the home score of a {@link Token#RESULT}
+     * @throws NumberFormatException for a {@link Token#DAY} line without a day
+     */
+    int getValue1(Token token) {
+        return token == Token.DAY ? getDay() : value1;
+    }
+
+    /**
+     * @return the text a parser needs of the current line: the phase name of a {@link Token#TOURNAMENT_PART}, the
+     *         line of a {@link Token#DATE} or {@link Token#TEAM_NAME}, <code>null</code> for other lines
+     */
+    String getText(Token token) {
+        switch (token) {
+            case TOURNAMENT_PART:
+                return text(value1);
+            case DATE:
+            case TEAM_NAME:
+                return text();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the number in front of the first '.' of a {@link Token#DAY} line
+     * @throws NumberFormatException if there is none
+     */
+    int getDay() {
+        int dot = start;
+        while (dot < end && buf[dot] != '.') {
+            dot++;
+        }
+        int day = 0;
+        for (int i = start; i < dot; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9 || day > (Integer.MAX_VALUE - digit) / 10) {
+                // leave the odd cases (signs, overflow, errors) to the library
+                return Integer.parseInt(new String(buf, start, dot - start));
+            }
+            day = day * 10 + digit;
+        }
+        if (dot == start) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+        return day;
+    }
+
+    /**
+     * Classify the current line
+     *
+     * @param worldCup also recognise the world cup specific lines
+     */
+    Token classify(final boolean worldCup) {
+        if (worldCup) {
+            for (char[] partStart : TOURNAMENT_PART_STARTS) {
+                if (startsWith(partStart) && !hasLineTerminator(start + partStart.length, end)) {
+                    value1 = partStart.length;
+                    return Token.TOURNAMENT_PART;
+                }
+            }
+            if (equalsLine(ROUND_OF_SIXTEEN)) {
+                return finals(0);
+            }
+            if (equalsLine(QUARTER_FINALS)) {
+                return finals(1);
+            }
+            if (equalsLine(SEMI_FINALS)) {
+                return finals(2);
+            }
+            if (startsWith(FINALS_THIRD_PLACE) && !hasLineTerminator(start + FINALS_THIRD_PLACE.length, end)) {
+                return finals(3);
+            }
+            if (startsWith(FINALS) && !hasLineTerminator(start + FINALS.length, end)) {
+                return finals(4);
+            }
+            if (end - start >= 2 && buf[start] == '(' && buf[end - 1] == ')'
+                    && !hasLineTerminator(start + 1, end - 1)) {
+                return Token.RESULT_AFTER_90_MIN;
+            }
+        }
+        if (isDay()) {
+            return Token.DAY;
+        }
+        if (isDate()) {
+            return Token.DATE;
+        }
+        if (isResult()) {
+            return Token.RESULT;
+        }
+        if (end > start && buf[start] == '-' && !hasLineTerminator(start + 1, end)) {
+            return Token.NO_RESULT;
+        }
+        if (end == start) {
+            return Token.EMPTY;
+        }
+        return Token.TEAM_NAME;
+    }
+
+    private Token finals(int round) {
+        value1 = round;
+        return Token.FINALS;
+    }
+
+    /** .*Spieltag.* */
+    private boolean isDay() {
+        if (hasLineTerminator(start, end)) {
+            return false;
+        }
+        int last = end - SPIELTAG.length;
+        for (int i = start; i <= last; i++) {
+            if (regionMatches(i, SPIELTAG)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** \d{1,2}+\.\d{1,2}+\..*\d{1,2}+:\d{1,2}+.* */
+    private boolean isDate() {
+        int i = start;
+        for (int part = 0; part < 2; part++) {
+            int digits = digits(i);
+            if (digits == 0) {
+                return false;
+            }
+            i += digits;
+            if (i == end || buf[i] != '.') {
+                return false;
+            }
+            i++;
+        }
+        if (hasLineTerminator(i, end)) {
+            return false;
+        }
+        for (int colon = i + 1; colon < end - 1; colon++) {
+            if (buf[colon] == ':' && isDigit(buf[colon - 1]) && isDigit(buf[colon + 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** \d{1,2}+\s*:\s*\d{1,2}+ */
+    private boolean isResult() {
+        int i = start;
+        int digits = digits(i);
+        if (digits == 0) {
+            return false;
+        }
+        int home = number(i, digits);
+        i += digits;
+        while (i < end && isWhitespace(buf[i])) {
+            i++;
+        }
+        if (i == end || buf[i] != ':') {
+            return false;
+        }
+        i++;
+        while (i < end && isWhitespace(buf[i])) {
+            i++;
+        }
+        digits = digits(i);
+        if (digits == 0 || i + digits != end) {
+            return false;
+        }
+        value1 = home;
+        value2 = number(i, digits);
+        return true;
+    }
+
+    /**
+     * @return the number of digits (at most two) starting at i
+     */
+    private int digits(int i) {
+        int digits = 0;
+        while (digits < 2 && i + digits < end && isDigit(buf[i + digits])) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private int number(int i, int digits) {
+        int number = 0;
+        for (int j = i; j < i + digits; j++) {
+            number = number * 10 + (buf[j] - '0');
+        }
+        return number;
+    }
+
+    private boolean startsWith(char[] prefix) {
+        return end - start >= prefix.length && regionMatches(start, prefix);
+    }
+
+    private boolean equalsLine(char[] text) {
+        return end - start == text.length && regionMatches(start, text);
+    }
+
+    private boolean regionMatches(int i, char[] text) {
+        for (int j = 0; j < text.length; j++) {
+            if (buf[i + j] != text[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** the characters of the regex class \s */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Line terminators left inside a line after splitting, which the regex '.' does not match
+     */
+    private boolean hasLineTerminator(int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = buf[i];
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
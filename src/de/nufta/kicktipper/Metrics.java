@@ -0,0 +1,275 @@
+package de.nufta.kicktipper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Process-wide counters, timers and histograms of the parse, rate and predict stages. The stages count locally and
+ * publish once per file, season or fixture, so nothing is recorded per line or per game.
+ * <p>
+ * All values are available as a text dump ({@link #dump()}) and as attributes of the MBean
+ * <code>de.nufta.kicktipper:type=Metrics</code> ({@link #registerMBean()}).
+ */
+final class Metrics {
+
+    /**
+     * A monotonic count
+     */
+    static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        void add(long n) {
+            count.add(n);
+        }
+
+        long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Durations of an operation in nanoseconds
+     */
+    static final class Timer {
+        private final Histogram durations = new Histogram();
+        private final LongAdder totalNanos = new LongAdder();
+
+        /**
+         * @return the current time, to be passed to {@link #stop(long)}
+         */
+        long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Record the time since {@link #start()}
+         *
+         * @return the recorded time in nanoseconds
+         */
+        long stop(long start) {
+            long nanos = System.nanoTime() - start;
+            durations.record(nanos);
+            totalNanos.add(nanos);
+            return nanos;
+        }
+
+        /**
+         * @return the total time recorded in seconds
+         */
+        double getSeconds() {
+            return totalNanos.sum() / 1e9;
+        }
+    }
+
+    /**
+     * A count per second of the time recorded by a timer. With parallel work the time of all threads is added up,
+     * so this is the rate per busy thread.
+     */
+    private static final class Rate {
+        private final Counter counter;
+        private final Timer timer;
+
+        Rate(final Counter counter, final Timer timer) {
+            this.counter = counter;
+            this.timer = timer;
+        }
+
+        long get() {
+            double seconds = timer.getSeconds();
+            return seconds > 0 ? Math.round(counter.get() / seconds) : 0;
+        }
+    }
+
+    private static final Map<String, Object> METRICS = new LinkedHashMap<>();
+
+    static final Counter PARSE_FILES = counter("parse.files");
+    static final Counter PARSE_LINES = counter("parse.lines");
+    static final Timer PARSE_TIME = timer("parse.time");
+
+    static final Counter RATE_SEASONS = counter("rate.seasons");
+    static final Counter RATE_PERIODS = counter("rate.periods");
+    static final Counter RATE_GAMES = counter("rate.games");
+    static final Timer RATE_TIME = timer("rate.time");
+
+    static final Counter PREDICT_FIXTURES = counter("predict.fixtures");
+    static final Timer PREDICT_TIME = timer("predict.time");
+    /** historical games taken from the index per fixture */
+    static final Histogram PREDICT_SCANNED = histogram("predict.candidatesScanned");
+    /** historical games the prediction of a fixture is averaged from */
+    static final Histogram PREDICT_SELECTED = histogram("predict.candidatesSelected");
+    static final Counter PREDICT_CACHE_HITS = counter("predict.cache.hits");
+    static final Counter PREDICT_CACHE_MISSES = counter("predict.cache.misses");
+    static final Counter PREDICT_CACHE_EVICTIONS = counter("predict.cache.evictions");
+    /** caches found with entries of an outdated rating state */
+    static final Counter PREDICT_CACHE_INVALIDATIONS = counter("predict.cache.invalidations");
+
+    static {
+        METRICS.put("parse.linesPerSecond", new Rate(PARSE_LINES, PARSE_TIME));
+        METRICS.put("rate.periodsPerSecond", new Rate(RATE_PERIODS, RATE_TIME));
+        METRICS.put("rate.gamesPerSecond", new Rate(RATE_GAMES, RATE_TIME));
+        METRICS.put("predict.fixturesPerSecond", new Rate(PREDICT_FIXTURES, PREDICT_TIME));
+    }
+
+    private static ObjectName registered;
+
+    private Metrics() {
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter();
+        METRICS.put(name, counter);
+        return counter;
+    }
+
+    private static Timer timer(String name) {
+        Timer timer = new Timer();
+        METRICS.put(name, timer);
+        return timer;
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram();
+        METRICS.put(name, histogram);
+        return histogram;
+    }
+
+    /**
+     * @return all current values by name, in a fixed order
+     */
+    static Map<String, Number> values() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : METRICS.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                values.put(name, ((Counter) metric).get());
+            } else if (metric instanceof Timer) {
+                Timer timer = (Timer) metric;
+                values.put(name + ".count", timer.durations.getCount());
+                values.put(name + ".totalMillis", Math.round(timer.totalNanos.sum() / 1e6));
+                values.put(name + ".p50Micros", timer.durations.getPercentile(50) / 1000);
+                values.put(name + ".p99Micros", timer.durations.getPercentile(99) / 1000);
+                values.put(name + ".maxMicros", timer.durations.getMax() / 1000);
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                values.put(name + ".count", histogram.getCount());
+                values.put(name + ".mean", histogram.getMean());
+                values.put(name + ".p50", histogram.getPercentile(50));
+                values.put(name + ".p99", histogram.getPercentile(99));
+                values.put(name + ".max", histogram.getMax());
+            } else {
+                values.put(name, ((Rate) metric).get());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return one line "name value" per value
+     */
+    static String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Number> entry : values().entrySet()) {
+            Number value = entry.getValue();
+            sb.append(entry.getKey()).append(' ');
+            if (value instanceof Double) {
+                sb.append(String.format(Locale.ROOT, "%.2f", value.doubleValue()));
+            } else {
+                sb.append(value);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, once per process
+     */
+    static synchronized void registerMBean() {
+        if (registered != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("de.nufta.kicktipper:type=Metrics");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+            registered = name;
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e);
+        }
+    }
+
+    /**
+     * Read-only view of {@link Metrics#values()}
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = values().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> values = values();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            // there are no operations
+            throw new ReflectionException(new NoSuchMethodException(actionName), "No operation " + actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Number> entry : values().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                        entry.getKey(), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Parse, rate and predict metrics",
+                    attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+                    new MBeanOperationInfo[0], null);
+        }
+    }
+}
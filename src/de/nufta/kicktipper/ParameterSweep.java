@@ -0,0 +1,152 @@
+package de.nufta.kicktipper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import de.nufta.kicktipper.KicktippRules.Hit;
+
+/**
+ * Searches the {@link PredictionParameters} that would have scored best in a {@link Backtest}. Every candidate is a
+ * full backtest; the candidates are evaluated in parallel, all on the one read-only index of the backtest, so a
+ * worker only needs its own walk through the index.
+ */
+class ParameterSweep {
+
+    private final Backtest backtest;
+
+    /**
+     * Creates a new Instance
+     *
+     * @param backtest the history to evaluate the candidates against
+     */
+    ParameterSweep(final Backtest backtest) {
+        this.backtest = backtest;
+    }
+
+    /**
+     * A candidate and its backtest score
+     */
+    static final class Evaluation {
+        final PredictionParameters parameters;
+        final Backtest.Score score;
+
+        Evaluation(final PredictionParameters parameters, final Backtest.Score score) {
+            this.parameters = parameters;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%6d %5.3f %6.1f%% %6.1f%% %6.1f%%  %s", score.getPoints(),
+                    score.getPointsPerGame(), 100 * score.getRate(Hit.EXACT), 100 * score.getRate(Hit.DIFFERENCE),
+                    100 * score.getRate(Hit.TENDENCY), parameters);
+        }
+    }
+
+    /**
+     * Evaluate the candidates
+     *
+     * @param pool pool to evaluate the candidates in parallel, <code>null</code> to evaluate them sequentially
+     * @return the evaluations, best first: by points, then by exact results, then in candidate order
+     */
+    List<Evaluation> run(final List<PredictionParameters> candidates, final ForkJoinPool pool) {
+        List<ForkJoinTask<Backtest.Score>> tasks = new ArrayList<>();
+        if (pool != null) {
+            for (PredictionParameters candidate : candidates) {
+                tasks.add(pool.submit(() -> backtest.score(candidate)));
+            }
+        }
+        List<Evaluation> evaluations = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            PredictionParameters candidate = candidates.get(i);
+            Backtest.Score score = pool != null ? tasks.get(i).join() : backtest.score(candidate);
+            evaluations.add(new Evaluation(candidate, score));
+        }
+        evaluations.sort((e1, e2) -> {
+            int c = Integer.compare(e2.score.getPoints(), e1.score.getPoints());
+            return c != 0 ? c : Integer.compare(e2.score.getHits(Hit.EXACT), e1.score.getHits(Hit.EXACT));
+        });
+        return evaluations;
+    }
+
+    /**
+     * @return all combinations of the given values
+     */
+    static List<PredictionParameters> grid(final int[] targets, final double[] maxQualityDifferences,
+            final double[] maxRatingDifferences, final double[] gameBaseFactors, final double[] qualityBaseFactors,
+            final int[] leewayDivisors, final double[] headToHeadFactors) {
+        List<PredictionParameters> grid = new ArrayList<>();
+        for (int target : targets) {
+            for (double maxQualityDifference : maxQualityDifferences) {
+                for (double maxRatingDifference : maxRatingDifferences) {
+                    for (double gameBaseFactor : gameBaseFactors) {
+                        for (double qualityBaseFactor : qualityBaseFactors) {
+                            for (int leewayDivisor : leewayDivisors) {
+                                for (double headToHeadFactor : headToHeadFactors) {
+                                    grid.add(new PredictionParameters(target, maxQualityDifference,
+                                            maxRatingDifference, gameBaseFactor, qualityBaseFactor, leewayDivisor,
+                                            headToHeadFactor));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * @return random parameters, each drawn uniformly between its values in the two bounds: the integer ones including
+     *         the upper bound, the others excluding it unless both bounds are equal
+     * @throws IllegalArgumentException if a value of the lower bound is greater than in the upper one, or the count
+     *         is negative
+     */
+    static List<PredictionParameters> random(final PredictionParameters min, final PredictionParameters max,
+            final int count, final long seed) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count " + count);
+        }
+        if (min.target > max.target || min.maxQualityDifference > max.maxQualityDifference
+                || min.maxRatingDifference > max.maxRatingDifference || min.gameBaseFactor > max.gameBaseFactor
+                || min.qualityBaseFactor > max.qualityBaseFactor || min.leewayDivisor > max.leewayDivisor
+                || min.headToHeadFactor > max.headToHeadFactor) {
+            throw new IllegalArgumentException("Lower bound " + min + " exceeds upper bound " + max);
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        List<PredictionParameters> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            candidates.add(new PredictionParameters(random.nextInt(min.target, max.target + 1),
+                    uniform(random, min.maxQualityDifference, max.maxQualityDifference),
+                    uniform(random, min.maxRatingDifference, max.maxRatingDifference),
+                    uniform(random, min.gameBaseFactor, max.gameBaseFactor),
+                    uniform(random, min.qualityBaseFactor, max.qualityBaseFactor),
+                    random.nextInt(min.leewayDivisor, max.leewayDivisor + 1),
+                    uniform(random, min.headToHeadFactor, max.headToHeadFactor)));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return a value from min (inclusive) to max (exclusive), min if both are equal
+     */
+    private static double uniform(SplittableRandom random, double min, double max) {
+        return min == max ? min : random.nextDouble(min, max);
+    }
+
+    /**
+     * @return a table of the first evaluations
+     */
+    static String format(final List<Evaluation> evaluations, final int count) {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%6s %5s %7s %7s %7s  %s%n", "Points",
+                "P/G", "Exact", "Diff", "Tend.", "Parameters"));
+        for (Evaluation evaluation : evaluations.subList(0, Math.min(count, evaluations.size()))) {
+            sb.append(evaluation).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
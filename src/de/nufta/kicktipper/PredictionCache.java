@@ -0,0 +1,140 @@
+package de.nufta.kicktipper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Predicted scores of recently predicted fixtures, so a fixture predicted again while no rating has changed skips the
+ * neighbour search. An entry is keyed by the teams, the home rating and the corrected rating difference of the
+ * fixture, and belongs to a {@link TournamentContext#getRatingVersion() rating state}: the first access with a newer
+ * state drops all entries. At most a fixed number of entries is kept, the least recently used one is evicted first.
+ * <p>
+ * The cache does not know the {@link PredictionParameters}; whoever changes them must {@link #clear()} it.
+ * Thread-safe.
+ */
+class PredictionCache {
+
+    /**
+     * A fixture. The ratings are compared bit for bit, so a hit is exactly the prediction that would be computed.
+     */
+    private static final class Key {
+        private final int team1, team2;
+        private final long rating1, difference;
+
+        Key(final int team1, final int team2, final double rating1, final double difference) {
+            this.team1 = team1;
+            this.team2 = team2;
+            this.rating1 = Double.doubleToLongBits(rating1);
+            this.difference = Double.doubleToLongBits(difference);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 * team1 + team2;
+            result = 31 * result + Long.hashCode(rating1);
+            return 31 * result + Long.hashCode(difference);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return team1 == other.team1 && team2 == other.team2 && rating1 == other.rating1
+                    && difference == other.difference;
+        }
+    }
+
+    private final TournamentContext context;
+    private final Map<Key, int[]> scores;
+    /** the rating state of the entries */
+    private long version;
+
+    /**
+     * Creates a new Instance
+     *
+     * @param context the tournament whose rating state the entries belong to
+     * @param capacity maximum number of entries
+     */
+    PredictionCache(final TournamentContext context, final int capacity) {
+        this.context = context;
+        this.scores = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                if (size() > capacity) {
+                    Metrics.PREDICT_CACHE_EVICTIONS.add(1);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the current rating state, to be passed to {@link #get} and {@link #put}
+     */
+    long getVersion() {
+        return context.getRatingVersion();
+    }
+
+    /**
+     * @param version the rating state the fixture is predicted in
+     * @return the predicted home and away goals, <code>null</code> if the fixture is not cached. Must not be modified.
+     */
+    synchronized int[] get(final long version, final int team1, final int team2, final double rating1,
+            final double difference) {
+        int[] score = use(version) ? scores.get(new Key(team1, team2, rating1, difference)) : null;
+        if (score != null) {
+            Metrics.PREDICT_CACHE_HITS.add(1);
+        } else {
+            Metrics.PREDICT_CACHE_MISSES.add(1);
+        }
+        return score;
+    }
+
+    /**
+     * Cache a prediction. Predictions made in an outdated rating state are ignored.
+     *
+     * @param version the rating state the fixture was predicted in
+     * @param score the predicted home and away goals, not to be modified afterwards
+     */
+    synchronized void put(final long version, final int team1, final int team2, final double rating1,
+            final double difference, final int[] score) {
+        if (use(version)) {
+            scores.put(new Key(team1, team2, rating1, difference), score);
+        }
+    }
+
+    /**
+     * Drop the entries if the given rating state is newer than theirs
+     *
+     * @return <code>false</code> if the given state is outdated
+     */
+    private boolean use(final long version) {
+        if (version < this.version) {
+            return false;
+        }
+        if (version > this.version) {
+            if (!scores.isEmpty()) {
+                Metrics.PREDICT_CACHE_INVALIDATIONS.add(1);
+                scores.clear();
+            }
+            this.version = version;
+        }
+        return true;
+    }
+
+    /**
+     * Drop all entries
+     */
+    synchronized void clear() {
+        scores.clear();
+    }
+
+    synchronized int size() {
+        return scores.size();
+    }
+}
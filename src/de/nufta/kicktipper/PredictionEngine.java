@@ -0,0 +1,394 @@
+package de.nufta.kicktipper;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.nufta.kicktipper.Game.Result;
+
+/**
+ * Predicts the results of a list of fixtures from the games of a {@link PredictionIndex}. Every fixture is computed
+ * independently from the same read-only history, so the fixtures can be predicted in parallel on a fork-join pool.
+ * Parallel and sequential runs produce identical results.
+ */
+class PredictionEngine {
+
+    /** Below this number of fixtures a task is not split any further */
+    private static final int SPLIT_THRESHOLD = 4;
+
+    private static final String NL = System.lineSeparator();
+
+    private final PredictionIndex index;
+    private final PredictionParameters parameters;
+    private final HeadToHead headToHead;
+    private final ForkJoinPool pool;
+    private PredictionTrace trace;
+    private PredictionCache cache;
+    private TipOptimizer tips;
+
+    /**
+     * Creates a new Instance
+     *
+     * @param index the historical games
+     * @param parameters weighting of the historical games
+     * @param headToHead previous meetings of the teams, <code>null</code> to ignore them
+     * @param pool pool for parallel predictions, <code>null</code> to predict sequentially
+     */
+    PredictionEngine(final PredictionIndex index, final PredictionParameters parameters, final HeadToHead headToHead,
+            final ForkJoinPool pool) {
+        this.index = index;
+        this.parameters = parameters;
+        this.headToHead = headToHead;
+        this.pool = pool;
+    }
+
+    /**
+     * @param trace receives the games every prediction is averaged from, <code>null</code> for no trace
+     */
+    void setTrace(final PredictionTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @param cache predictions of fixtures predicted before with the same parameters and tip optimizer,
+     *        <code>null</code> for none. Not used while debug output or a trace is written, which need the games a
+     *        prediction is averaged from.
+     */
+    void setCache(final PredictionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param tips picks the tip with the most expected points from the averaged games, <code>null</code> to round the
+     *        average score. Must be set before {@link #predictor()} is called.
+     */
+    void setTipOptimizer(final TipOptimizer tips) {
+        this.tips = tips;
+    }
+
+    /**
+     * Predict the scores of all fixtures and store them in the fixtures.
+     *
+     * @return the debug output per fixture if debug is enabled, otherwise <code>null</code>
+     */
+    String[] predict(final List<Game> fixtures) {
+        final String[] debugOutput = KickTipper.isDebug() ? new String[fixtures.size()] : null;
+        if (pool == null) {
+            predict(fixtures, 0, fixtures.size(), debugOutput);
+        } else {
+            pool.invoke(new PredictTask(fixtures, 0, fixtures.size(), debugOutput));
+        }
+        return debugOutput;
+    }
+
+    private void predict(final List<Game> fixtures, final int from, final int to, final String[] debugOutput) {
+        Scratch scratch = new Scratch(trace);
+        for (int i = from; i < to; i++) {
+            StringBuilder debug = debugOutput != null ? new StringBuilder() : null;
+            predict(fixtures.get(i), i, scratch, debug);
+            if (debug != null) {
+                debugOutput[i] = debug.toString();
+            }
+        }
+    }
+
+    /**
+     * Predict a single fixture.
+     *
+     * @param fixture index of the fixture in the list of fixtures, for the trace
+     * @param debug receives the debug output, may be <code>null</code>
+     */
+    private void predict(final Game pGame, final int fixture, final Scratch scratch, final StringBuilder debug) {
+        long start = Metrics.PREDICT_TIME.start();
+        double rating1 = pGame.getTeam1().getRating().getRating();
+        pGame.setRatingBefore1(rating1);
+        double rating2 = pGame.getTeam2().getRating().getRating();
+        pGame.setRatingBefore2(rating2);
+        final double diff = pGame.getCorrectedRatingDifference();
+        final int team1 = pGame.getTeam1().getId();
+        final int team2 = pGame.getTeam2().getId();
+        final boolean cached = cache != null && debug == null && scratch.recorder == null;
+        final long version = cached ? cache.getVersion() : 0;
+        int[] score = cached ? cache.get(version, team1, team2, rating1, diff) : null;
+        if (score != null) {
+            pGame.setScore1(score[0]);
+            pGame.setScore2(score[1]);
+            Metrics.PREDICT_TIME.stop(start);
+            Metrics.PREDICT_FIXTURES.add(1);
+            return;
+        }
+        if (scratch.recorder != null) {
+            scratch.recorder.beginFixture(fixture, pGame, rating1, diff);
+        }
+        HeadToHead.Range meetings = getMeetings(team1, team2, Long.MAX_VALUE);
+        double[] goals = expectedGoals(rating1, diff, Integer.MAX_VALUE, meetings, scratch, debug);
+        double home = goals[0];
+        double away = goals[1];
+        double goalDiff = away - home;
+        score = tip(home, away, scratch);
+        if (cached) {
+            cache.put(version, team1, team2, rating1, diff, score);
+        }
+        pGame.setScore1(score[0]);
+        pGame.setScore2(score[1]);
+        if (debug != null) {
+            debug.append("----> Predicted Result: ").append(pGame).append("  GoalDiff:")
+                    .append(scratch.format.format(goalDiff)).append(NL);
+            if (tips != null && scratch.grid.getTotal() > 0) {
+                debug.append("----> Expected points: ")
+                        .append(scratch.format.format(tips.getExpectedPoints(scratch.grid, score[0], score[1])))
+                        .append(NL);
+            }
+            debug.append("\n\n").append(NL);
+        }
+        if (scratch.recorder != null) {
+            scratch.recorder.endFixture(home, away, scratch.scanned);
+        }
+        Metrics.PREDICT_TIME.stop(start);
+        Metrics.PREDICT_FIXTURES.add(1);
+        Metrics.PREDICT_SCANNED.record(scratch.scanned);
+        Metrics.PREDICT_SELECTED.record(scratch.averaged);
+    }
+
+    /**
+     * Expected goals of a fixture, before rounding to a predicted score
+     *
+     * @param team1 the home team
+     * @param team2 the away team
+     * @param rating1 rating of the home team
+     * @param diff corrected rating difference of the fixture
+     * @return home and away goals
+     */
+    double[] expectedGoals(final Team team1, final Team team2, final double rating1, final double diff) {
+        return expectedGoals(rating1, diff, Integer.MAX_VALUE, getMeetings(team1.getId(), team2.getId(),
+                Long.MAX_VALUE), new Scratch(null), null);
+    }
+
+    /**
+     * @param before only meetings of rating periods before this {@link RatingHistory#key(int, int, int) key}
+     * @return the previous meetings of two teams, none if they are not weighted
+     */
+    private HeadToHead.Range getMeetings(final int team1, final int team2, final long before) {
+        if (headToHead == null || parameters.headToHeadFactor == 0) {
+            return HeadToHead.Range.EMPTY;
+        }
+        return headToHead.get(team1, team2, before);
+    }
+
+    /**
+     * @return a predictor of single fixtures for one thread
+     */
+    Predictor predictor() {
+        return new Predictor();
+    }
+
+    /**
+     * @return the tip for the expected goals of the last fixture predicted with the scratch
+     */
+    private int[] tip(final double home, final double away, final Scratch scratch) {
+        if (tips == null || scratch.grid.getTotal() == 0) {
+            return toScore(home, away);
+        }
+        return tips.bestTip(scratch.grid);
+    }
+
+    /**
+     * Round expected goals to a score: the home goals are rounded, the away goals keep the rounded goal difference
+     */
+    private static int[] toScore(final double home, final double away) {
+        int score1 = (int) Math.round(home);
+        return new int[] { score1, (int) Math.round(score1 + (away - home)) };
+    }
+
+    /**
+     * The weighted average score of the historical games closest to the fixture
+     *
+     * @param limit only games at history positions below this are used, see {@link PredictionIndex.Walk#reset(double,
+     *        int)}
+     * @param meetings previous meetings of the teams, each weighted with the head-to-head factor
+     * @param debug receives the debug output, may be <code>null</code>
+     * @return home and away goals
+     */
+    private double[] expectedGoals(final double rating1, final double diff, final int limit,
+            final HeadToHead.Range meetings, final Scratch scratch, final StringBuilder debug) {
+        final int target = parameters.target;
+        // Counts the games looked at. Deliberately shared by both loops below: once the first loop has seen its
+        // target number of games, the second one stops at the first game exceeding the quality difference.
+        int cnt = 0;
+        final double maxQualityDifference = parameters.maxQualityDifference;
+        final double maxRatingDifference = parameters.maxRatingDifference;
+
+        // slots of the selected games in the index
+        int[] selected = scratch.selected;
+        int selectedSize = 0;
+        BitSet selectedIDs = scratch.selectedIDs;
+        if (scratch.grid != null) {
+            scratch.grid.clear();
+        }
+
+        int[] results = new int[Game.Result.values().length];
+        PredictionIndex.Walk walk = scratch.walk.reset(diff, limit);
+        int scanned = 0;
+        while (walk.hasNext()) {
+            int slot = walk.next();
+            double quality = walk.getQuality();
+            double rDiff = Math.abs(index.getRatingBefore1(slot) - rating1);
+            if (cnt++ >= target && (quality > maxQualityDifference || rDiff > maxRatingDifference)) {
+                break;
+            }
+            scanned++;
+            Result result = index.getResult(slot);
+            results[result.ordinal()]++;
+            int id = index.getId(slot);
+            if (!selectedIDs.get(id)) {
+                if (selectedSize == selected.length) {
+                    selected = scratch.selected = Arrays.copyOf(selected, selectedSize * 2);
+                }
+                selected[selectedSize++] = slot;
+                selectedIDs.set(id);
+            }
+        }
+        // clear just the bits set for this fixture, for the next one
+        for (int i = 0; i < selectedSize; i++) {
+            selectedIDs.clear(index.getId(selected[i]));
+        }
+        int leeway = selectedSize / parameters.leewayDivisor;
+        int max = Math.max(results[0], Math.max(results[1], results[2]));
+        int kept = 0;
+        for (int i = 0; i < selectedSize; i++) {
+            if (results[index.getResult(selected[i]).ordinal()] >= max - leeway) {
+                selected[kept++] = selected[i];
+            }
+        }
+        selectedSize = kept;
+
+        double home = 0, away = 0;
+        final double gameBaseFactor = parameters.gameBaseFactor;
+        final double qualityBaseFactor = parameters.qualityBaseFactor;
+        double divider = 0;
+        int averaged = 0;
+        for (int i = 0; i < selectedSize; i++) {
+            int slot = selected[i];
+            double tDiff = index.getDifference(slot);
+            double quality = Math.abs(tDiff - diff);
+            if (cnt++ >= target && quality > maxQualityDifference) {
+                break;
+            }
+            double qualityfactor = (maxQualityDifference - quality) * (qualityBaseFactor / maxQualityDifference);
+            if (debug != null) {
+                debug.append("Quality: ").append(Math.round(quality)).append(", Factor ")
+                        .append(scratch.format.format(gameBaseFactor + qualityfactor)).append(" ->")
+                        .append(index.getGame(slot)).append(NL);
+            }
+            if (scratch.recorder != null) {
+                scratch.recorder.addGame(index.getId(slot), index.getTeam1(slot), index.getTeam2(slot),
+                        index.getScore1(slot), index.getScore2(slot), index.getSeason(slot), quality,
+                        gameBaseFactor + qualityfactor);
+            }
+            if (scratch.grid != null) {
+                scratch.grid.add(index.getScore1(slot), index.getScore2(slot), gameBaseFactor + qualityfactor);
+            }
+            home += (index.getScore1(slot) * (gameBaseFactor + qualityfactor));
+            away += (index.getScore2(slot) * (gameBaseFactor + qualityfactor));
+            divider += (gameBaseFactor + qualityfactor);
+            averaged++;
+        }
+        final double headToHeadFactor = parameters.headToHeadFactor;
+        for (int i = 0; i < meetings.size(); i++) {
+            if (debug != null) {
+                debug.append("Head-to-head ").append(meetings.getSeason(i)).append(": ")
+                        .append(meetings.getScore1(i)).append(':').append(meetings.getScore2(i)).append(", Factor ")
+                        .append(scratch.format.format(headToHeadFactor)).append(NL);
+            }
+            if (scratch.grid != null) {
+                scratch.grid.add(meetings.getScore1(i), meetings.getScore2(i), headToHeadFactor);
+            }
+            home += meetings.getScore1(i) * headToHeadFactor;
+            away += meetings.getScore2(i) * headToHeadFactor;
+            divider += headToHeadFactor;
+        }
+        scratch.scanned = scanned;
+        scratch.averaged = averaged;
+        home /= divider;
+        away /= divider;
+        return new double[] { home, away };
+    }
+
+    /**
+     * Predicts single fixtures, e.g. when replaying the history, reusing its working state. Not thread safe.
+     */
+    final class Predictor {
+        private final Scratch scratch = new Scratch(null);
+
+        /**
+         * Predicted score of a fixture between two teams, without storing it anywhere
+         *
+         * @param rating1 rating of the home team
+         * @param diff corrected rating difference of the fixture
+         * @param limit only the games at history positions below this are used
+         * @param team1 id of the home team
+         * @param team2 id of the away team
+         * @param before only the meetings of the teams before this {@link RatingHistory#key(int, int, int) key} are
+         *        used
+         * @return home and away goals
+         */
+        int[] predictScore(final double rating1, final double diff, final int limit, final int team1,
+                final int team2, final long before) {
+            double[] goals = expectedGoals(rating1, diff, limit, getMeetings(team1, team2, before), scratch, null);
+            return tip(goals[0], goals[1], scratch);
+        }
+    }
+
+    /**
+     * Per-thread working state, reused for all fixtures of a task
+     */
+    private class Scratch {
+        final PredictionIndex.Walk walk = index.walk();
+        int[] selected = new int[64];
+        /** ids of the selected games, a game and its reverse game share an id */
+        final BitSet selectedIDs = new BitSet(index.getIdCount() + 1);
+        /** the weighted results of the averaged games, <code>null</code> without tip optimizer */
+        final TipOptimizer.Grid grid = tips != null ? new TipOptimizer.Grid() : null;
+        /** historical games taken from the index and averaged for the last fixture */
+        int scanned, averaged;
+        /** trace of the current thread, <code>null</code> if not tracing */
+        final PredictionTrace.Recorder recorder;
+        /** for the debug output, <code>null</code> if debug is off; formats are not thread-safe */
+        final DecimalFormat format;
+
+        Scratch(final PredictionTrace trace) {
+            recorder = trace != null ? trace.recorder() : null;
+            format = KickTipper.isDebug() ? new DecimalFormat("0.00") : null;
+        }
+    }
+
+    private class PredictTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Game> fixtures;
+        private final int from, to;
+        private final String[] debugOutput;
+
+        PredictTask(final List<Game> fixtures, final int from, final int to, final String[] debugOutput) {
+            this.fixtures = fixtures;
+            this.from = from;
+            this.to = to;
+            this.debugOutput = debugOutput;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                predict(fixtures, from, to, debugOutput);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PredictTask(fixtures, from, mid, debugOutput),
+                        new PredictTask(fixtures, mid, to, debugOutput));
+            }
+        }
+    }
+}
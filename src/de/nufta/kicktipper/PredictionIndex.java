@@ -0,0 +1,373 @@
+package de.nufta.kicktipper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Historical games sorted by their corrected rating difference. Finding the games closest to a given difference is
+ * a binary search followed by an outward walk, instead of sorting the whole history for every prediction.
+ * <p>
+ * A game is indexed as its row in the {@link GameStore} and an orientation bit, so a world cup game and its reverse
+ * are two ints with opposite differences rather than two {@link Game} objects. Games are addressed by their slot in
+ * the sorted order; the accessors read the store with the teams swapped for reversed entries.
+ */
+class PredictionIndex {
+
+    private final TournamentContext context;
+    private final GameStore store;
+    /** whether the games are indexed by the difference they were rated with instead of the current one */
+    private final boolean rated;
+    /** per slot: row of the game shifted left by one, the lowest bit set if the game is reversed */
+    private int[] entries;
+    /** corrected rating differences, ascending */
+    private double[] differences;
+    /** position of each game in the history, used to break ties */
+    private int[] positions;
+    private int size;
+
+    /**
+     * The games to index in the order ties are resolved, each either way round
+     */
+    static final class History {
+        private int[] entries = new int[256];
+        private int size;
+
+        /**
+         * Append a game as it is oriented
+         */
+        History add(final Game game) {
+            return add(game.getRow(), game.isReversed());
+        }
+
+        /**
+         * Append the reverse of a game
+         */
+        History addReverse(final Game game) {
+            return add(game.getRow(), !game.isReversed());
+        }
+
+        /**
+         * @return the number of games appended, the history position of the next one
+         */
+        int size() {
+            return size;
+        }
+
+        private History add(final int row, final boolean reversed) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry(row, reversed);
+            return this;
+        }
+    }
+
+    private static int entry(final int row, final boolean reversed) {
+        return row << 1 | (reversed ? 1 : 0);
+    }
+
+    /**
+     * Creates a new Instance
+     *
+     * @param context the tournament of the games
+     * @param history the games to search
+     * @param rated index the games by their {@link Game#getRatedDifference() rated difference} instead of their
+     *        current corrected difference, to replay them without knowing later games
+     */
+    PredictionIndex(final TournamentContext context, final History history, final boolean rated) {
+        this.context = context;
+        this.store = context.getGameStore();
+        this.rated = rated;
+        final int size = history.size;
+        final double[] unsorted = new double[size];
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            int entry = history.entries[i];
+            unsorted[i] = rated ? Game.getRatedDifference(context, entry >>> 1, (entry & 1) != 0)
+                    : Game.getCorrectedRatingDifference(context, entry >>> 1, (entry & 1) != 0);
+            order[i] = i;
+        }
+        sort(order, (p1, p2) -> Double.compare(unsorted[p1], unsorted[p2]));
+        entries = new int[size];
+        differences = new double[size];
+        positions = order;
+        for (int i = 0; i < size; i++) {
+            entries[i] = history.entries[order[i]];
+            differences[i] = unsorted[order[i]];
+        }
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Add games in place, e.g. the results of a new matchday. For ties they count as coming after all games already
+     * indexed.
+     */
+    void add(final List<Game> added) {
+        if (size + added.size() > entries.length) {
+            int capacity = Math.max(size + added.size(), entries.length + (entries.length >> 1));
+            entries = Arrays.copyOf(entries, capacity);
+            differences = Arrays.copyOf(differences, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        for (Game game : added) {
+            double difference = rated ? game.getRatedDifference() : game.getCorrectedRatingDifference();
+            int i = upperBound(difference);
+            System.arraycopy(entries, i, entries, i + 1, size - i);
+            System.arraycopy(differences, i, differences, i + 1, size - i);
+            System.arraycopy(positions, i, positions, i + 1, size - i);
+            entries[i] = entry(game.getRow(), game.isReversed());
+            differences[i] = difference;
+            positions[i] = size;
+            size++;
+        }
+    }
+
+    private int row(int slot) {
+        return entries[slot] >>> 1;
+    }
+
+    private boolean reversed(int slot) {
+        return (entries[slot] & 1) != 0;
+    }
+
+    /**
+     * @return the game in a slot as a new view, for output only
+     */
+    Game getGame(int slot) {
+        return new Game(context, row(slot), reversed(slot));
+    }
+
+    /**
+     * @return the {@link Game#getID() id} of the game in a slot, the same for both orientations
+     */
+    int getId(int slot) {
+        return store.getId(row(slot));
+    }
+
+    /**
+     * @return the number of game ids of the context, no {@link #getId(int) id} is greater
+     */
+    int getIdCount() {
+        return store.getIdCount();
+    }
+
+    double getDifference(int slot) {
+        return differences[slot];
+    }
+
+    int getScore1(int slot) {
+        return reversed(slot) ? store.getScore2(row(slot)) : store.getScore1(row(slot));
+    }
+
+    int getScore2(int slot) {
+        return reversed(slot) ? store.getScore1(row(slot)) : store.getScore2(row(slot));
+    }
+
+    double getRatingBefore1(int slot) {
+        return reversed(slot) ? store.getRatingBefore2(row(slot)) : store.getRatingBefore1(row(slot));
+    }
+
+    int getTeam1(int slot) {
+        return reversed(slot) ? store.getTeam2(row(slot)) : store.getTeam1(row(slot));
+    }
+
+    int getTeam2(int slot) {
+        return reversed(slot) ? store.getTeam1(row(slot)) : store.getTeam2(row(slot));
+    }
+
+    int getSeason(int slot) {
+        return store.getSeason(row(slot));
+    }
+
+    /**
+     * @return the result of the game in a slot, seen from its first team
+     */
+    Game.Result getResult(int slot) {
+        int diff = getScore1(slot) - getScore2(slot);
+        if (diff < 0) {
+            return Game.Result.LOST;
+        } else if (diff > 0) {
+            return Game.Result.WON;
+        }
+        return Game.Result.DRAW;
+    }
+
+    /**
+     * @return a new walk over this index. A walk is not thread safe, but may be reused via {@link Walk#reset(double)}
+     */
+    Walk walk() {
+        return new Walk();
+    }
+
+    /**
+     * Index of the first game with a difference not smaller than the given one
+     */
+    private int lowerBound(double difference) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (differences[mid] < difference) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of the first game with a difference greater than the given one
+     */
+    private int upperBound(double difference) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (differences[mid] <= difference) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Iterates the games by ascending distance of their corrected rating difference to a target difference. Games
+     * with the same distance are returned in history order, so a walk yields exactly what a stable sort of the history
+     * by distance would.
+     */
+    class Walk {
+
+        private double difference;
+        private int left, right;
+        private int[] group = new int[16];
+        private int groupSize, groupPos;
+        private double quality;
+        private int limit;
+
+        private Walk() {
+        }
+
+        /**
+         * Restart the walk at the given corrected rating difference
+         */
+        Walk reset(final double difference) {
+            return reset(difference, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Restart the walk at the given corrected rating difference, skipping the games at history positions from the
+         * limit on. With a history in chronological order this walks the games played before a given game.
+         */
+        Walk reset(final double difference, final int limit) {
+            this.difference = difference;
+            this.limit = limit;
+            right = lowerBound(difference);
+            left = right - 1;
+            groupSize = groupPos = 0;
+            return this;
+        }
+
+        boolean hasNext() {
+            while (groupPos == groupSize && (left >= 0 || right < size)) {
+                nextGroup();
+            }
+            return groupPos < groupSize;
+        }
+
+        /**
+         * @return the slot of the next game
+         */
+        int next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return group[groupPos++];
+        }
+
+        /**
+         * @return the distance of the game last returned by {@link #next()} to the target difference
+         */
+        double getQuality() {
+            return quality;
+        }
+
+        /**
+         * Collect all games with the next smallest distance from both sides and order them by history position. The
+         * group is empty if all of them are beyond the limit.
+         */
+        private void nextGroup() {
+            double leftQuality = left >= 0 ? Math.abs(difference - differences[left]) : Double.POSITIVE_INFINITY;
+            double rightQuality = right < size ? Math.abs(difference - differences[right])
+                    : Double.POSITIVE_INFINITY;
+            quality = Math.min(leftQuality, rightQuality);
+            groupSize = groupPos = 0;
+            while (left >= 0 && Math.abs(difference - differences[left]) == quality) {
+                add(left--);
+            }
+            while (right < size && Math.abs(difference - differences[right]) == quality) {
+                add(right++);
+            }
+            // insertion sort, groups are tiny
+            for (int i = 1; i < groupSize; i++) {
+                int g = group[i];
+                int j = i - 1;
+                while (j >= 0 && positions[group[j]] > positions[g]) {
+                    group[j + 1] = group[j];
+                    j--;
+                }
+                group[j + 1] = g;
+            }
+        }
+
+        private void add(int i) {
+            if (positions[i] >= limit) {
+                return;
+            }
+            if (groupSize == group.length) {
+                int[] grown = new int[group.length * 2];
+                System.arraycopy(group, 0, grown, 0, groupSize);
+                group = grown;
+            }
+            group[groupSize++] = i;
+        }
+    }
+
+    /**
+     * Stable merge sort of an int array
+     */
+    static void sort(int[] a, IntBinaryOperator comparator) {
+        int[] from = a;
+        int[] to = new int[a.length];
+        for (int width = 1; width < a.length; width *= 2) {
+            for (int low = 0; low < a.length; low += 2 * width) {
+                int mid = Math.min(low + width, a.length);
+                int high = Math.min(low + 2 * width, a.length);
+                int i = low, j = mid, k = low;
+                while (i < mid && j < high) {
+                    to[k++] = comparator.applyAsInt(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                }
+                while (i < mid) {
+                    to[k++] = from[i++];
+                }
+                while (j < high) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] tmp = from;
+            from = to;
+            to = tmp;
+        }
+        if (from != a) {
+            System.arraycopy(from, 0, a, 0, a.length);
+        }
+    }
+}
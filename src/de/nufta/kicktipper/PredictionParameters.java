@@ -0,0 +1,85 @@
+package de.nufta.kicktipper;
+
+import java.util.Locale;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * The tuning constants of the neighbour weighting of the {@link PredictionEngine}. Immutable, so one instance can be
+ * shared by any number of threads.
+ */
+final class PredictionParameters {
+
+    /** minimum number of historical games looked at before the quality limits apply */
+    final int target;
+    /** largest distance of the corrected rating difference of a historical game to the fixture */
+    final double maxQualityDifference;
+    /** largest distance of the home team rating of a historical game to the fixture */
+    final double maxRatingDifference;
+    /** weight of every historical game */
+    final double gameBaseFactor;
+    /** additional weight of a historical game with exactly the corrected rating difference of the fixture */
+    final double qualityBaseFactor;
+    /**
+     * games whose result (win, draw, loss) is rarer than the most common one by more than the number of games divided
+     * by this are dropped
+     */
+    final int leewayDivisor;
+    /** weight of every previous meeting of the two teams, 0 to ignore them */
+    final double headToHeadFactor;
+
+    /**
+     * Creates a new Instance
+     *
+     * @throws IllegalArgumentException if a value is out of range: the quality difference, the game base factor and
+     *         the leeway divisor must be positive, so every averaged game has a weight; the others must not be negative
+     */
+    PredictionParameters(final int target, final double maxQualityDifference, final double maxRatingDifference,
+            final double gameBaseFactor, final double qualityBaseFactor, final int leewayDivisor,
+            final double headToHeadFactor) {
+        if (target < 0) {
+            throw new IllegalArgumentException("target must not be negative: " + target);
+        }
+        // written as !(x > 0) to reject NaN as well
+        if (!(maxQualityDifference > 0) || Double.isInfinite(maxQualityDifference)) {
+            throw new IllegalArgumentException("maxQualityDifference must be positive: " + maxQualityDifference);
+        }
+        if (!(maxRatingDifference >= 0)) {
+            throw new IllegalArgumentException("maxRatingDifference must not be negative: " + maxRatingDifference);
+        }
+        if (!(gameBaseFactor > 0) || Double.isInfinite(gameBaseFactor)) {
+            throw new IllegalArgumentException("gameBaseFactor must be positive: " + gameBaseFactor);
+        }
+        if (!(qualityBaseFactor >= 0) || Double.isInfinite(qualityBaseFactor)) {
+            throw new IllegalArgumentException("qualityBaseFactor must not be negative: " + qualityBaseFactor);
+        }
+        if (leewayDivisor <= 0) {
+            throw new IllegalArgumentException("leewayDivisor must be positive: " + leewayDivisor);
+        }
+        if (!(headToHeadFactor >= 0) || Double.isInfinite(headToHeadFactor)) {
+            throw new IllegalArgumentException("headToHeadFactor must not be negative: " + headToHeadFactor);
+        }
+        this.target = target;
+        this.maxQualityDifference = maxQualityDifference;
+        this.maxRatingDifference = maxRatingDifference;
+        this.gameBaseFactor = gameBaseFactor;
+        this.qualityBaseFactor = qualityBaseFactor;
+        this.leewayDivisor = leewayDivisor;
+        this.headToHeadFactor = headToHeadFactor;
+    }
+
+    /**
+     * @return the parameters used unless others are set
+     */
+    static PredictionParameters forMode(Mode mode) {
+        return new PredictionParameters(6, mode.equals(Mode.LEAGUE) ? 20 : 10, 700, 1.0, 0.5, 5, 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "target=%d maxQuality=%.1f maxRating=%.0f gameBase=%.2f qualityBase=%.2f leeway=1/%d headToHead=%.2f",
+                target, maxQualityDifference, maxRatingDifference, gameBaseFactor, qualityBaseFactor, leewayDivisor,
+                headToHeadFactor);
+    }
+}
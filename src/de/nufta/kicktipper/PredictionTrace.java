@@ -0,0 +1,221 @@
+package de.nufta.kicktipper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Binary trace of predictions: for every fixture the historical games its prediction was averaged from, with their
+ * quality and weight. Each predicting thread encodes its records with its own {@link Recorder}; full buffers are
+ * handed to a background thread that writes them to the file, so tracing costs a few stores per game and no strings.
+ * Thread-safe.
+ * {@link TraceRenderer} turns a trace into readable text.
+ *
+ * <pre>
+ * header:  magic "KTTR", format version, mode
+ * team:    TEAM, id, name (length and UTF-8 bytes)
+ * fixture: FIXTURE, fixture index, game id, team1, team2, season, day, rating1, corrected difference,
+ *          home goals, away goals, games scanned, number of games, per game:
+ *          game id, team1, team2, score1, score2, season, quality, weight
+ * end:     END
+ * </pre>
+ *
+ * Records of different threads may be interleaved, the fixture index gives their order.
+ */
+class PredictionTrace implements Closeable {
+
+    static final int MAGIC = 0x4B545452; // "KTTR"
+    static final int VERSION = 1;
+    static final byte END = 0, TEAM = 1, FIXTURE = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** offset of the goals in a fixture record, they are filled in at its end */
+    private static final int GOALS_OFFSET = 1 + 4 + 4 + 4 + 4 + 2 + 2 + 8 + 8;
+    private static final int GAME_SIZE = 4 + 4 + 4 + 1 + 1 + 2 + 4 + 4;
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(16);
+    private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile IOException error;
+    private final List<Recorder> recorders = new ArrayList<>();
+    private final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+        Recorder r = new Recorder();
+        synchronized (recorders) {
+            recorders.add(r);
+        }
+        return r;
+    });
+
+    /**
+     * Create the trace file and write the header and the teams of the context
+     */
+    PredictionTrace(final Path file, final TournamentContext context) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(context.getMode().ordinal());
+        for (Team team : context.getTeamRepository().getAllTeams()) {
+            byte[] name = team.getName().getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 1 + 4 + 4 + name.length) {
+                write(buffer);
+            }
+            buffer.put(TEAM).putInt(team.getId()).putInt(name.length).put(name);
+        }
+        write(buffer);
+        writer = new Thread(this::writeBuffers, "prediction trace writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Body of the writer thread. After an error the buffers are still taken, so the predicting threads never block.
+     */
+    private void writeBuffers() {
+        try {
+            for (;;) {
+                ByteBuffer buffer = full.take();
+                if (buffer == CLOSE) {
+                    return;
+                }
+                if (error == null) {
+                    try {
+                        write(buffer);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                buffer.clear();
+                free.offer(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ByteBuffer take() {
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    private void submit(ByteBuffer buffer) {
+        try {
+            full.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the recorder of the current thread
+     */
+    Recorder recorder() {
+        return recorder.get();
+    }
+
+    /**
+     * Write the remaining records and close the file. No thread may record anymore.
+     *
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (recorders) {
+            for (Recorder r : recorders) {
+                r.flush();
+            }
+        }
+        submit(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (error == null) {
+                ByteBuffer end = ByteBuffer.allocate(1).put(END);
+                write(end);
+            }
+        } finally {
+            channel.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Encodes the fixtures predicted by one thread. A fixture record is built up in a scratch buffer, because the
+     * number of games is only known at its end, and then appended to the output buffer.
+     */
+    final class Recorder {
+
+        private ByteBuffer record = ByteBuffer.allocate(1024);
+        private ByteBuffer buffer = take();
+        private int games;
+
+        void beginFixture(int index, Game fixture, double rating1, double diff) {
+            record.clear();
+            games = 0;
+            record.put(FIXTURE).putInt(index).putInt(fixture.getID()).putInt(fixture.getTeam1().getId())
+                    .putInt(fixture.getTeam2().getId()).putShort((short) fixture.getSeason())
+                    .putShort((short) fixture.getDay()).putDouble(rating1).putDouble(diff);
+            // goals, games scanned and number of games
+            record.putFloat(0).putFloat(0).putInt(0).putShort((short) 0);
+        }
+
+        void addGame(int id, int team1, int team2, int score1, int score2, int season, double quality,
+                double weight) {
+            if (record.remaining() < GAME_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(record.capacity() * 2);
+                record.flip();
+                grown.put(record);
+                record = grown;
+            }
+            record.putInt(id).putInt(team1).putInt(team2).put((byte) score1).put((byte) score2)
+                    .putShort((short) season).putFloat((float) quality).putFloat((float) weight);
+            games++;
+        }
+
+        void endFixture(double home, double away, int scanned) {
+            record.putFloat(GOALS_OFFSET, (float) home).putFloat(GOALS_OFFSET + 4, (float) away)
+                    .putInt(GOALS_OFFSET + 8, scanned).putShort(GOALS_OFFSET + 12, (short) games);
+            record.flip();
+            if (buffer.remaining() < record.remaining()) {
+                flush();
+                if (buffer.capacity() < record.remaining()) {
+                    buffer = ByteBuffer.allocate(record.remaining());
+                }
+            }
+            buffer.put(record);
+        }
+
+        /**
+         * Hand the recorded fixtures to the writer
+         */
+        private void flush() {
+            if (buffer.position() > 0) {
+                submit(buffer);
+                buffer = take();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.nufta.kicktipper;
+
+import org.goochjs.glicko2.RatingCalculator;
+
+/**
+ * Rates teams period by period. Games and participants are collected for the current rating period, then
+ * {@link #updateRatings()} updates the {@link org.goochjs.glicko2.Rating} of every participant at once. Participants
+ * stay participants in the following periods, teams that do not play in a period only gain deviation. An engine may
+ * defer that gain until the team plays again; {@link #settle()} brings the ratings of all participants up to date.
+ */
+interface RatingEngine {
+
+    enum Kind {
+        /** {@link Glicko2Engine}, rating whole periods on primitive arrays */
+        GLICKO2,
+        /** the org.goochjs.glicko2 library */
+        GOOCHJS,
+        /**
+         * {@link Glicko2Engine} rating only the teams that play in a period. Idle teams gain their deviation when they
+         * play again or the engine is settled, so a period costs as much as its games, not as its participants.
+         */
+        SPARSE;
+
+        RatingEngine create(RatingCalculator calc) {
+            switch (this) {
+                case GOOCHJS:
+                    return new GoochjsRatingEngine(calc);
+                case SPARSE:
+                    return new Glicko2Engine(true);
+                default:
+                    return new Glicko2Engine();
+            }
+        }
+    }
+
+    /**
+     * Add a team to the rating periods even if it does not play
+     */
+    void addParticipant(Team team);
+
+    /**
+     * Add a game to the current rating period. Both teams become participants.
+     */
+    void addGame(Team team1, Team team2, int score1, int score2);
+
+    /**
+     * Rate the current period and start the next one
+     */
+    void updateRatings();
+
+    /**
+     * Update the ratings of participants that have not played since a rated period. Must be called before the
+     * ratings are read outside of the engine.
+     */
+    void settle();
+
+    /**
+     * Drop the games and participants of the current period
+     */
+    void reset();
+}
@@ -0,0 +1,222 @@
+package de.nufta.kicktipper;
+
+import java.util.Arrays;
+
+import org.goochjs.glicko2.Rating;
+
+/**
+ * Rating trajectories of the teams of a {@link TournamentContext}. After every rating period the rating, deviation and
+ * volatility of each team that played in it are appended to the team's track, keyed by season, tournament phase and
+ * day. Tracks are primitive arrays in that order, so the rating at any point and the ratings of any span are found by
+ * binary search instead of replaying the seasons.
+ */
+class RatingHistory {
+
+    /**
+     * One team's entries in key order
+     */
+    private static final class Track {
+        long[] keys = new long[16];
+        double[] ratings = new double[16];
+        double[] deviations = new double[16];
+        double[] volatilities = new double[16];
+        int size;
+    }
+
+    /** tracks by team id */
+    private Track[] tracks = new Track[64];
+
+    /**
+     * @return the key of a rating period: periods are ordered by season, then tournament phase, then day like the
+     *         games of a season
+     */
+    static long key(int season, int phase, int day) {
+        return ((long) season << 32) | ((phase & 0xFFFFL) << 16) | (day & 0xFFFFL);
+    }
+
+    /**
+     * Record the current rating of a team after the given rating period. Recording a period again replaces its
+     * entry.
+     */
+    synchronized void record(Team team, int season, int phase, int day) {
+        Rating rating = team.getRating();
+        record(team.getId(), key(season, phase, day), rating.getRating(), rating.getRatingDeviation(),
+                rating.getVolatility());
+    }
+
+    synchronized void record(int teamId, long key, double rating, double deviation, double volatility) {
+        if (teamId >= tracks.length) {
+            tracks = Arrays.copyOf(tracks, Math.max(teamId + 1, tracks.length * 2));
+        }
+        Track track = tracks[teamId];
+        if (track == null) {
+            track = tracks[teamId] = new Track();
+        }
+        int i = track.size;
+        if (i > 0 && track.keys[i - 1] >= key) {
+            // out of order, only when results are added for an earlier period
+            i = upperBound(track, key);
+            if (i > 0 && track.keys[i - 1] == key) {
+                set(track, i - 1, key, rating, deviation, volatility);
+                return;
+            }
+        }
+        if (track.size == track.keys.length) {
+            int capacity = track.size * 2;
+            track.keys = Arrays.copyOf(track.keys, capacity);
+            track.ratings = Arrays.copyOf(track.ratings, capacity);
+            track.deviations = Arrays.copyOf(track.deviations, capacity);
+            track.volatilities = Arrays.copyOf(track.volatilities, capacity);
+        }
+        int moved = track.size - i;
+        System.arraycopy(track.keys, i, track.keys, i + 1, moved);
+        System.arraycopy(track.ratings, i, track.ratings, i + 1, moved);
+        System.arraycopy(track.deviations, i, track.deviations, i + 1, moved);
+        System.arraycopy(track.volatilities, i, track.volatilities, i + 1, moved);
+        set(track, i, key, rating, deviation, volatility);
+        track.size++;
+    }
+
+    private static void set(Track track, int i, long key, double rating, double deviation, double volatility) {
+        track.keys[i] = key;
+        track.ratings[i] = rating;
+        track.deviations[i] = deviation;
+        track.volatilities[i] = volatility;
+    }
+
+    /**
+     * @return the index of the first entry with a key greater than the given one
+     */
+    private static int upperBound(Track track, long key) {
+        int low = 0;
+        int high = track.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (track.keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Track track(Team team) {
+        int id = team.getId();
+        return id >= 0 && id < tracks.length ? tracks[id] : null;
+    }
+
+    /**
+     * @return number of entries of a team
+     */
+    synchronized int size(Team team) {
+        Track track = track(team);
+        return track == null ? 0 : track.size;
+    }
+
+    /**
+     * @return the whole track of a team
+     */
+    synchronized Range getAll(Team team) {
+        Track track = track(team);
+        return track == null ? Range.EMPTY : new Range(track, 0, track.size);
+    }
+
+    /**
+     * @return the entries of a team with keys from <code>fromKey</code> to <code>toKey</code>, both inclusive
+     */
+    synchronized Range getRange(Team team, long fromKey, long toKey) {
+        Track track = track(team);
+        if (track == null || fromKey > toKey) {
+            return Range.EMPTY;
+        }
+        return new Range(track, fromKey == Long.MIN_VALUE ? 0 : upperBound(track, fromKey - 1),
+                upperBound(track, toKey));
+    }
+
+    /**
+     * @return the entries of a team in a season
+     */
+    Range getSeason(Team team, int season) {
+        return getRange(team, key(season, 0, 0), key(season, 0xFFFF, 0xFFFF));
+    }
+
+    /**
+     * @return the latest entry of a team up to and including the given period, empty if the team had not played
+     *         by then. Its rating is the rating the team had at that point.
+     */
+    synchronized Range getAsOf(Team team, int season, int phase, int day) {
+        Track track = track(team);
+        if (track == null) {
+            return Range.EMPTY;
+        }
+        int end = upperBound(track, key(season, phase, day));
+        return new Range(track, Math.max(0, end - 1), end);
+    }
+
+    /**
+     * Copy of consecutive entries of a track
+     */
+    static final class Range {
+
+        static final Range EMPTY = new Range(new Track(), 0, 0);
+
+        private final long[] keys;
+        private final double[] ratings;
+        private final double[] deviations;
+        private final double[] volatilities;
+
+        private Range(Track track, int from, int to) {
+            keys = Arrays.copyOfRange(track.keys, from, to);
+            ratings = Arrays.copyOfRange(track.ratings, from, to);
+            deviations = Arrays.copyOfRange(track.deviations, from, to);
+            volatilities = Arrays.copyOfRange(track.volatilities, from, to);
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        long getKey(int i) {
+            return keys[i];
+        }
+
+        int getSeason(int i) {
+            return (int) (keys[i] >> 32);
+        }
+
+        int getPhase(int i) {
+            return (int) (keys[i] >>> 16) & 0xFFFF;
+        }
+
+        int getDay(int i) {
+            return (int) keys[i] & 0xFFFF;
+        }
+
+        double getRating(int i) {
+            return ratings[i];
+        }
+
+        double getDeviation(int i) {
+            return deviations[i];
+        }
+
+        double getVolatility(int i) {
+            return volatilities[i];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < size(); i++) {
+                sb.append(getSeason(i)).append(' ');
+                if (getPhase(i) != 0) {
+                    sb.append(getPhase(i)).append(' ');
+                }
+                sb.append(getDay(i)).append(": ").append(Math.round(getRating(i))).append(" RD ")
+                        .append(Math.round(getDeviation(i))).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
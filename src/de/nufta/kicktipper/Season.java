@@ -1,13 +1,13 @@
 package de.nufta.kicktipper;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.Objects;
 
-import org.goochjs.glicko2.Rating;
 import org.goochjs.glicko2.RatingCalculator;
-import org.goochjs.glicko2.RatingPeriodResults;
 
 /**
  * @author ulrich.luebke
@@ -17,17 +17,133 @@ public class Season implements Comparable<Season> {
 
     int year;
     boolean rated = false;
+    private final TournamentContext context;
+    private final GameStore store;
     private RatingCalculator calc;
+    /** rates the periods of this season, kept for incremental updates */
+    private RatingEngine engine;
 
-    SortedSet<Game> games = new TreeSet<Game>();
+    /** rows of the games in the game store, in game order */
+    private int[] rows = new int[64];
+    private int size;
+    /** row of every game by phase name, day, date and teams, built on the first lookup */
+    private Map<GameKey, Integer> gameRows;
 
-    public Season(int year, RatingCalculator calc) {
+    /**
+     * A game as the result files identify it: phase name, day, date and teams
+     */
+    private static final class GameKey {
+        private final String phaseName, date;
+        private final int day, team1, team2;
+
+        GameKey(final String phaseName, final int day, final String date, final int team1, final int team2) {
+            this.phaseName = phaseName;
+            this.day = day;
+            this.date = date;
+            this.team1 = team1;
+            this.team2 = team2;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 * Objects.hashCode(phaseName) + day;
+            result = 31 * result + Objects.hashCode(date);
+            return 31 * (31 * result + team1) + team2;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GameKey)) {
+                return false;
+            }
+            GameKey other = (GameKey) obj;
+            return day == other.day && team1 == other.team1 && team2 == other.team2
+                    && Objects.equals(phaseName, other.phaseName) && Objects.equals(date, other.date);
+        }
+    }
+
+    public Season(TournamentContext context, int year, RatingCalculator calc) {
+        this.context = context;
+        this.store = context.getGameStore();
         this.year = year;
         this.calc = calc;
     }
 
     public void addGame(Game g) {
-        games.add(g);
+        addRow(g.getRow());
+    }
+
+    /**
+     * Insert a row keeping the game order
+     */
+    private void addRow(int row) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = store.compare(rows[mid], row);
+            if (c == 0) {
+                return; // already contained
+            } else if (c < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        System.arraycopy(rows, low, rows, low + 1, size - low);
+        rows[low] = row;
+        size++;
+        if (gameRows != null) {
+            gameRows.put(key(row), row);
+        }
+    }
+
+    private GameKey key(int row) {
+        return new GameKey(store.getPhaseName(row), store.getDay(row), store.getDate(row), store.getTeam1(row),
+                store.getTeam2(row));
+    }
+
+    /**
+     * @return the row of the game with the given phase name, day, date and teams, -1 if this season does not contain
+     *         it
+     */
+    int findGame(String phaseName, int day, String date, int team1, int team2) {
+        return findGame(new GameKey(phaseName, day, date, team1, team2));
+    }
+
+    private int findGame(GameKey key) {
+        if (gameRows == null) {
+            gameRows = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                gameRows.put(key(rows[i]), rows[i]);
+            }
+        }
+        Integer row = gameRows.get(key);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Report a result for a contained game that differs from the one it has
+     */
+    void checkResult(int row, int score1, int score2) {
+        if (store.getScore1(row) != score1 || store.getScore2(row) != score2) {
+            TeamRepository teamRepository = context.getTeamRepository();
+            System.err.println("Season " + year + " already contains "
+                    + teamRepository.getTeam(store.getTeam1(row)).getName() + " - "
+                    + teamRepository.getTeam(store.getTeam2(row)).getName() + " on day " + store.getDay(row)
+                    + " with the result " + store.getScore1(row) + ":" + store.getScore2(row) + ", ignoring "
+                    + score1 + ":" + score2);
+        }
+    }
+
+    /**
+     * @return number of games
+     */
+    int size() {
+        return size;
     }
 
     // Rate this season
@@ -35,60 +151,173 @@ public class Season implements Comparable<Season> {
         if (rated) {
             System.err.println("Season " + year + "already rated");
         } else {
-            if (KickTipper.isDebug()) {
-                System.out.print("Rating Season" + year +".");
-            }
-            int day = games.first().getDay();
-            int phase = games.first().getTournamentPhaseNumber();
-            RatingPeriodResults rpr = new RatingPeriodResults();
-            List<Team> allTeams = TeamRepository.getInstance().getAllTeams();
-            for (Team team : allTeams) {
-                rpr.addParticipants(team.getRating());
+            if (size == 0) {
+                rated = true;
+                return;
             }
-            List<Game> dayGames = new ArrayList<Game>();
-            for (Game game : games) {
-                if (game.getDay() != day || game.getTournamentPhaseNumber() != phase) {
-                    day = game.getDay();
-                    phase = game.getTournamentPhaseNumber();
-                    if (KickTipper.isDebug() ) {
-                        System.out.print(".");
-                    }
-                    calc.updateRatings(rpr);
-                    updateAfter(dayGames);
-                    dayGames.clear();
+            long start = Metrics.RATE_TIME.start();
+            int periods = 1;
+            int day = store.getDay(rows[0]);
+            int phase = store.getPhaseNumber(rows[0]);
+            engine = context.createRatingEngine(calc);
+            addParticipants();
+            int periodStart = 0;
+            for (int i = 0; i < size; i++) {
+                int row = rows[i];
+                if (store.getDay(row) != day || store.getPhaseNumber(row) != phase) {
+                    day = store.getDay(row);
+                    phase = store.getPhaseNumber(row);
+                    periods++;
+                    engine.updateRatings();
+                    updateAfter(rows, periodStart, i);
+                    periodStart = i;
                 }
-                dayGames.add(game);
-                Team team1 = game.getTeam1();
-                Team team2 = game.getTeam2();
-                Rating rating1 = team1.getRating();
-                game.setRatingBefore1(rating1.getRating());
-                Rating rating2 = team2.getRating();
-                game.setRatingBefore2(rating2.getRating());
-                int result = game.getScore1() - game.getScore2();
-                if (result == 0) {
-                    rpr.addDraw(rating1, rating2);
-                } else if (result > 0) {
-                    rpr.addResult(rating1, rating2);
-                } else { // (result < 0)
-                    rpr.addResult(rating2, rating1);
-                } 
+                addResult(row);
             }
-            if (KickTipper.isDebug()) {
-                System.out.println();
-            }
-            calc.updateRatings(rpr);
-            updateAfter(dayGames);
-            dayGames.clear();
+            engine.updateRatings();
+            updateAfter(rows, periodStart, size);
+            engine.settle();
+            context.advanceRatingVersion();
+            recordMetrics(start, periods, size);
+            Metrics.RATE_SEASONS.add(1);
         }
         rated = true;
     }
 
-    private void updateAfter(List<Game> games) {
-        for (Game game : games) {
-            Team team1 = game.getTeam1();
-            Team team2 = game.getTeam2();
-            game.setRatingAfter1(team1.getRating().getRating());
-            game.setRatingAfter2(team2.getRating().getRating());
+    /**
+     * Add finished games (typically a matchday) to this rated season and rate them as one rating period, without
+     * replaying the season. Adding a whole matchday at once rates it like {@link #rate()} would.
+     * <p>
+     * The games are parsed on their own, so their tournament phases are renumbered to continue the phases of this
+     * season: the oldest phase of the games continues the latest phase of the season if both have the same name, the
+     * others follow in their order. Games the season already contains, with the same phase name, day, date and teams,
+     * are skipped, so adding a matchday again has no effect. A different result for a contained game is reported and
+     * ignored. Parsers should skip them before they take a row in the game store, see
+     * {@link SeasonParser#skipContained(Season)}.
+     *
+     * @return the games added
+     */
+    public List<Game> addResults(List<Game> newGames) {
+        if (!rated) {
+            System.err.println("Season " + year + " not yet rated");
+            return new ArrayList<>();
+        }
+        continuePhases(newGames);
+        List<Game> accepted = new ArrayList<>();
+        Map<GameKey, Integer> acceptedRows = new HashMap<>();
+        for (Game game : newGames) {
+            int row = game.getRow();
+            GameKey key = key(row);
+            int contained = findGame(key);
+            if (contained < 0) {
+                Integer repeated = acceptedRows.putIfAbsent(key, row);
+                contained = repeated == null ? -1 : repeated;
+            }
+            if (contained < 0) {
+                accepted.add(game);
+            } else {
+                checkResult(contained, store.getScore1(row), store.getScore2(row));
+            }
+        }
+        if (accepted.isEmpty()) {
+            return accepted;
+        }
+        int[] added = new int[accepted.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = accepted.get(i).getRow();
+        }
+        long start = Metrics.RATE_TIME.start();
+        PredictionIndex.sort(added, store::compare);
+        if (engine == null) {
+            // restored from a snapshot
+            engine = context.createRatingEngine(calc);
+        }
+        // teams may have been created since the season was rated
+        addParticipants();
+        for (int row : added) {
+            addRow(row);
+            addResult(row);
+        }
+        engine.updateRatings();
+        updateAfter(added, 0, added.length);
+        engine.settle();
+        context.advanceRatingVersion();
+        recordMetrics(start, 1, added.length);
+        return accepted;
+    }
+
+    /**
+     * Renumber the tournament phases of separately parsed games to follow the latest phase of this season
+     */
+    private void continuePhases(List<Game> newGames) {
+        if (size == 0 || newGames.isEmpty()) {
+            return;
+        }
+        int oldest = newGames.get(0).getRow();
+        for (Game game : newGames) {
+            if (store.getPhaseNumber(game.getRow()) < store.getPhaseNumber(oldest)) {
+                oldest = game.getRow();
+            }
+        }
+        // the rows are in game order, the last one is of the latest phase
+        int latest = rows[size - 1];
+        int offset = store.getPhaseNumber(latest) - store.getPhaseNumber(oldest);
+        if (!Objects.equals(store.getPhaseName(latest), store.getPhaseName(oldest))) {
+            offset++;
+        }
+        if (offset != 0) {
+            for (Game game : newGames) {
+                store.setPhaseNumber(game.getRow(), store.getPhaseNumber(game.getRow()) + offset);
+            }
+        }
+    }
+
+    private void recordMetrics(long start, int periods, int games) {
+        long nanos = Metrics.RATE_TIME.stop(start);
+        Metrics.RATE_PERIODS.add(periods);
+        Metrics.RATE_GAMES.add(games);
+        if (KickTipper.isDebug()) {
+            System.out.println("Rated Season " + year + ": " + periods + " periods, " + games + " games in "
+                    + nanos / 1000 / 1000.0 + " ms");
+        }
+    }
+
+    private void addParticipants() {
+        List<Team> allTeams = context.getTeamRepository().getAllTeams();
+        for (Team team : allTeams) {
+            engine.addParticipant(team);
+        }
+    }
+
+    private void addResult(int row) {
+        TeamRepository teamRepository = context.getTeamRepository();
+        Team team1 = teamRepository.getTeam(store.getTeam1(row));
+        Team team2 = teamRepository.getTeam(store.getTeam2(row));
+        // adding the game first settles the ratings of teams that were idle in a sparse engine
+        engine.addGame(team1, team2, store.getScore1(row), store.getScore2(row));
+        store.setRatingBefore1(row, team1.getRating().getRating());
+        store.setRatingBefore2(row, team2.getRating().getRating());
+    }
+
+    /**
+     * Store the ratings after a rated period in its games, in the rating history and in the head-to-head records
+     */
+    private void updateAfter(int[] rows, int from, int to) {
+        TeamRepository teamRepository = context.getTeamRepository();
+        RatingHistory history = context.getRatingHistory();
+        HeadToHead headToHead = context.getHeadToHead();
+        for (int i = from; i < to; i++) {
+            int row = rows[i];
+            Team team1 = teamRepository.getTeam(store.getTeam1(row));
+            Team team2 = teamRepository.getTeam(store.getTeam2(row));
+            store.setRatingAfter1(row, team1.getRating().getRating());
+            store.setRatingAfter2(row, team2.getRating().getRating());
+            int season = store.getSeason(row);
+            int phase = store.getPhaseNumber(row);
+            int day = store.getDay(row);
+            history.record(team1, season, phase, day);
+            history.record(team2, season, phase, day);
+            headToHead.record(row);
         }
     }
 
@@ -143,7 +372,7 @@ public class Season implements Comparable<Season> {
         StringBuilder sb = new StringBuilder( "Season: " + year + ": \n");
         int prevDay = -1;
         int prevPhase = -1;
-        for (Game game : games) {
+        for (Game game : getGames()) {
             int day = game.getDay();
             int phase = game.getTournamentPhaseNumber();
             if (day != prevDay || phase != prevPhase) {
@@ -165,9 +394,18 @@ public class Season implements Comparable<Season> {
         return sb.toString();
     }
     
+    /**
+     * @return the game at the given position in game order
+     */
+    Game getGame(int i) {
+        return new Game(context, rows[i], false);
+    }
+
     List<Game> getGames() {
-        ArrayList<Game> all = new ArrayList<Game>();
-        all.addAll(games);
+        ArrayList<Game> all = new ArrayList<Game>(size);
+        for (int i = 0; i < size; i++) {
+            all.add(new Game(context, rows[i], false));
+        }
         return all;
     }
     
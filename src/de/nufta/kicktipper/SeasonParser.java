@@ -4,10 +4,15 @@ package de.nufta.kicktipper;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
 import org.goochjs.glicko2.RatingCalculator;
 
+import de.nufta.kicktipper.KickTipper.Mode;
+import de.nufta.kicktipper.LineTokenizer.Token;
+
 /**
  * Parse a season's result data file (or a prediction file with the same format)
  * 
@@ -22,18 +27,30 @@ public class SeasonParser {
         INIT, GAME, HOME, AWAY, SCORE
     };
 
+    /**
+     * How lines are classified: by the regular expressions below or by the equivalent, allocation-light
+     * {@link LineTokenizer}
+     */
+    enum LineMode {
+        REGEX, SCANNER
+    };
+
+    private final TournamentContext context;
     private final RatingCalculator calc;
     private final Season previousSeason;
     private Stage stage = Stage.INIT;
     private final int year;
     private final String fileName;
     private final Season season;
+    /** games whose results are skipped, <code>null</code> to parse all */
+    private Season known;
     private int day = 0;
     private boolean predictMode;
     private Team homeTeam, awayTeam;
     private int homeScore, awayScore;
     private String date;
     private int lineNumber = 0;
+    private LineMode lineMode = LineMode.SCANNER;
 
     private String tournamentPhaseName;
     private int tournamentPhaseNumber = 10101;
@@ -63,14 +80,15 @@ public class SeasonParser {
     /**
      * Create a new Instance
      */
-    SeasonParser(int year, String fileName, boolean predictMode, RatingCalculator calc,
+    SeasonParser(TournamentContext context, int year, String fileName, boolean predictMode, RatingCalculator calc,
             Season previousSeason) {
+        this.context = context;
         this.year = year;
         this.fileName = fileName;
         this.predictMode = predictMode;
         this.calc = calc;
         this.previousSeason = previousSeason;
-        season = new Season(year, calc);
+        season = new Season(context, year, calc);
         init();
     }
 
@@ -80,14 +98,60 @@ public class SeasonParser {
         date = null;
     }
 
+    /**
+     * Select how lines are classified. Both modes yield the same season.
+     */
+    void setLineMode(LineMode lineMode) {
+        this.lineMode = lineMode;
+    }
+
+    /**
+     * Skip results of games the given season already contains, and results repeated within the input, before they
+     * take a row in the game store. A different result for a contained game is reported.
+     */
+    void skipContained(Season known) {
+        this.known = known;
+    }
+
     public Season parse() {
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(this.getClass().getResourceAsStream("data/" + fileName)))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                ++lineNumber;
-                processLine(line.trim());
+        return parse(new InputStreamReader(this.getClass().getResourceAsStream("data/" + fileName),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse the season from the given reader, which is closed afterwards
+     */
+    Season parse(Reader reader) {
+        return parse(() -> {
+            switch (lineMode) {
+                case SCANNER:
+                    try (Reader r = reader) {
+                        parseTokens(new LineTokenizer(r));
+                    }
+                    break;
+                case REGEX:
+                    parseLines(new BufferedReader(reader));
+                    break;
             }
+        });
+    }
+
+    /**
+     * Parse the season from a file tokenized beforehand, see {@link DataDirectory#tokenize(java.nio.file.Path,
+     * boolean)}
+     */
+    Season parse(SeasonTokens tokens) {
+        return parse(() -> parseTokens(tokens));
+    }
+
+    private interface Input {
+        void parse() throws IOException;
+    }
+
+    private Season parse(Input input) {
+        long start = Metrics.PARSE_TIME.start();
+        try {
+            input.parse();
         } catch (IOException e) {
             System.err.println("Error while parsing File \"" + fileName + "\" line " + lineNumber);
             e.printStackTrace();
@@ -100,11 +164,78 @@ public class SeasonParser {
         if (stage == Stage.SCORE && predictMode) {
             processLine("");
         }
+        Metrics.PARSE_TIME.stop(start);
+        Metrics.PARSE_FILES.add(1);
+        Metrics.PARSE_LINES.add(lineNumber);
         return season;
     }
 
+    private void parseLines(BufferedReader reader) throws IOException {
+        try (BufferedReader br = reader) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                ++lineNumber;
+                processLine(line.trim());
+            }
+        }
+    }
+
+    private void parseTokens(LineTokenizer tokenizer) throws IOException {
+        final boolean worldCup = context.getMode() == Mode.WORLD_CUP;
+        while (tokenizer.nextLine()) {
+            ++lineNumber;
+            Token token = tokenizer.classify(worldCup);
+            processToken(token, tokenizer.getValue1(token), tokenizer.getValue2(), tokenizer.getText(token));
+        }
+    }
+
+    private void parseTokens(SeasonTokens tokens) throws IOException {
+        for (int i = 0; i < tokens.size(); i++) {
+            ++lineNumber;
+            processToken(tokens.getToken(i), tokens.getValue1(i), tokens.getValue2(i), tokens.getText(i));
+        }
+        lineNumber = Math.max(lineNumber, tokens.getErrorLine());
+        tokens.throwError();
+    }
+
+    /**
+     * Same as {@link #processLine(String)}, for a line classified by the tokenizer
+     */
+    private void processToken(Token token, int value1, int value2, String text) {
+        switch (token) {
+            case TOURNAMENT_PART:
+                newTournamentPhase(text);
+                tournamentPhaseNumber--;
+                break;
+            case FINALS:
+                newDay(FINALS_OFFSET + value1);
+                break;
+            case RESULT_AFTER_90_MIN:
+                // ignore for now - we're after 120 minutes results
+                break;
+            case DAY:
+                newDay(value1);
+                break;
+            case DATE:
+                newGame(text);
+                break;
+            case RESULT:
+                result(value1, value2);
+                break;
+            case NO_RESULT:
+                noResultRegistered();
+                break;
+            case EMPTY:
+                noResult();
+                break;
+            case TEAM_NAME:
+                teamName(text);
+                break;
+        }
+    }
+
     private void processLine(String line) {
-        switch (KickTipper.getMode()) {
+        switch (context.getMode()) {
             case WORLD_CUP:
                 processLineWorldCup(line);
                 break;
@@ -127,7 +258,7 @@ public class SeasonParser {
         int pos = 0;
         for (Pattern pattern : FINALS_PATTERNS) {
             if (pattern.matcher(line).matches()) {
-                newDay(line, FINALS_OFFSET + pos);
+                newDay(FINALS_OFFSET + pos);
                 return;
             }
             pos++;
@@ -147,9 +278,9 @@ public class SeasonParser {
         } else if (RESULT_PATTERN.matcher(line).matches()) {
             result(line);
         } else if (NO_RESULT_PATTERN.matcher(line).matches()) {
-            noResultRegistered(line);
+            noResultRegistered();
         } else if (line.isEmpty()) {
-            noResult(line);
+            noResult();
         } else {
             teamName(line);
         }
@@ -158,7 +289,6 @@ public class SeasonParser {
     private static final String[] tpStarts = { "Tabelle", "Turnierbaum" };
 
     private void newTournamentPart(String line) {
-        assert (stage == Stage.INIT || stage == Stage.GAME);
         boolean found = false;
         for (String start : tpStarts) {
             if (line.startsWith(start)) {
@@ -168,26 +298,39 @@ public class SeasonParser {
             }
         }
         assert found;
-        this.tournamentPhaseName = line;
-        this.tournamentPhaseNumber--;
+        newTournamentPhase(line);
+    }
 
+    private void newTournamentPhase(String name) {
+        assert (stage == Stage.INIT || stage == Stage.GAME);
+        this.tournamentPhaseName = name;
+        this.tournamentPhaseNumber--;
     }
 
     private void result(String line) {
+        String[] split = line.split(":");
+        result(Integer.parseInt(split[0].trim()), Integer.parseInt(split[1].trim()));
+    }
+
+    private void result(int homeScore, int awayScore) {
         assert (stage == Stage.SCORE);
         assert (predictMode == false);
-        String[] split = line.split(":");
-        homeScore = Integer.parseInt(split[0].trim());
-        awayScore = Integer.parseInt(split[1].trim());
+        this.homeScore = homeScore;
+        this.awayScore = awayScore;
+        if (known != null && isContained()) {
+            init();
+            stage = Stage.GAME;
+            return;
+        }
         Game game;
-        switch (KickTipper.getMode()) {
+        switch (context.getMode()) {
             case LEAGUE:
-                game = new Game(date, year, day, homeTeam, awayTeam, homeScore, awayScore);
+                game = new Game(context, date, year, day, homeTeam, awayTeam, homeScore, awayScore);
                 break;
             case WORLD_CUP:
-                game = new Game(tournamentPhaseName, tournamentPhaseNumber, date, year, day, homeTeam, awayTeam,
-                        homeScore, awayScore);
-                WorldRepository.getInstance().register(tournamentPhaseName, homeTeam.getName(), awayTeam.getName());
+                game = new Game(context, tournamentPhaseName, tournamentPhaseNumber, date, year, day, homeTeam,
+                        awayTeam, homeScore, awayScore);
+                context.getWorldRepository().register(tournamentPhaseName, homeTeam.getName(), awayTeam.getName());
                 break;
             default:
                 assert (false);
@@ -199,24 +342,43 @@ public class SeasonParser {
         stage = Stage.GAME;
     }
 
-    private void noResultRegistered(String line) {
+    /**
+     * @return whether the known season or the games parsed so far contain the current game
+     */
+    private boolean isContained() {
+        // league games have no phase name
+        String phaseName = context.getMode() == Mode.WORLD_CUP ? tournamentPhaseName : "";
+        Season containing = known;
+        int row = known.findGame(phaseName, day, date, homeTeam.getId(), awayTeam.getId());
+        if (row < 0) {
+            containing = season;
+            row = season.findGame(phaseName, day, date, homeTeam.getId(), awayTeam.getId());
+        }
+        if (row < 0) {
+            return false;
+        }
+        containing.checkResult(row, homeScore, awayScore);
+        return true;
+    }
+
+    private void noResultRegistered() {
         assert (stage == Stage.SCORE);
         assert (predictMode == false);
         init();
         stage = Stage.GAME;
     }
 
-    private void noResult(String line) {
+    private void noResult() {
         assert (stage == Stage.SCORE);
         assert (predictMode == true);
         Game game;
-        switch (KickTipper.getMode()) {
+        switch (context.getMode()) {
             case LEAGUE:
-                game = new Game(date, year, day, homeTeam, awayTeam, -1, -1);
+                game = new Game(context, date, year, day, homeTeam, awayTeam, -1, -1);
                 break;
             case WORLD_CUP:
-                game = new Game(tournamentPhaseName, tournamentPhaseNumber, date, year, day, homeTeam, awayTeam, -1,
-                        -1);
+                game = new Game(context, tournamentPhaseName, tournamentPhaseNumber, date, year, day, homeTeam,
+                        awayTeam, -1, -1);
                 break;
             default:
                 assert (false);
@@ -232,10 +394,10 @@ public class SeasonParser {
     private void teamName(String line) {
         assert (stage == Stage.HOME || stage == Stage.AWAY);
         if (stage == Stage.HOME) {
-            homeTeam = TeamRepository.getInstance().getTeam(line, previousSeason, calc);
+            homeTeam = context.getTeamRepository().getTeam(line, previousSeason, calc);
             stage = Stage.AWAY;
         } else if (stage == Stage.AWAY) {
-            awayTeam = TeamRepository.getInstance().getTeam(line, previousSeason, calc);
+            awayTeam = context.getTeamRepository().getTeam(line, previousSeason, calc);
             stage = Stage.SCORE;
         }
     }
@@ -246,18 +408,15 @@ public class SeasonParser {
         stage = Stage.HOME;
     }
 
-    private void newDay(String line, int dayNum) {
+    private void newDay(int dayNum) {
         assert (stage == Stage.INIT || stage == Stage.GAME);
         day = dayNum;
         stage = Stage.GAME;
     }
 
     private void newDay(String line) {
-        assert (stage == Stage.INIT || stage == Stage.GAME);
         String[] split = line.split("\\.");
-        int newDay = Integer.parseInt(split[0]);
-        day = newDay;
-        stage = Stage.GAME;
+        newDay(Integer.parseInt(split[0]));
     }
 
     public static void main(String[] args) {
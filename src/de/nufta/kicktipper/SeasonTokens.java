@@ -0,0 +1,124 @@
+package de.nufta.kicktipper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.nufta.kicktipper.LineTokenizer.Token;
+
+/**
+ * The classified lines of a data file with the values {@link SeasonParser} needs of them. Tokenizing does not touch
+ * any repository, so several files can be tokenized in parallel and then replayed one after another in chronological
+ * order.
+ * <p>
+ * A read or tokenizing error is kept together with its line and raised when the tokens are replayed, so it is
+ * reported like any other parse error.
+ */
+class SeasonTokens {
+
+    private Token[] tokens = new Token[256];
+    private int[] values1 = new int[256];
+    private int[] values2 = new int[256];
+    private String[] texts = new String[256];
+    private int size;
+
+    private Exception error;
+    private int errorLine;
+
+    /**
+     * Tokenize all lines of a file
+     *
+     * @param worldCup also recognise the world cup specific lines
+     */
+    static SeasonTokens tokenize(final LineTokenizer tokenizer, final boolean worldCup) {
+        SeasonTokens tokens = new SeasonTokens();
+        try {
+            while (tokenizer.nextLine()) {
+                tokens.add(tokenizer, tokenizer.classify(worldCup));
+            }
+        } catch (IOException | RuntimeException e) {
+            tokens.fail(e, tokens.size + 1);
+        }
+        return tokens;
+    }
+
+    /**
+     * @return tokens of a file that could not be read at all
+     */
+    static SeasonTokens failed(final IOException e) {
+        SeasonTokens tokens = new SeasonTokens();
+        tokens.fail(e, 0);
+        return tokens;
+    }
+
+    private void add(LineTokenizer tokenizer, Token token) {
+        if (size == tokens.length) {
+            int capacity = size * 2;
+            tokens = Arrays.copyOf(tokens, capacity);
+            values1 = Arrays.copyOf(values1, capacity);
+            values2 = Arrays.copyOf(values2, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+        }
+        values1[size] = tokenizer.getValue1(token);
+        values2[size] = tokenizer.getValue2();
+        texts[size] = tokenizer.getText(token);
+        tokens[size++] = token;
+    }
+
+    private void fail(Exception e, int line) {
+        error = e;
+        errorLine = line;
+    }
+
+    /**
+     * @return number of tokens, one per line up to an error
+     */
+    int size() {
+        return size;
+    }
+
+    Token getToken(int i) {
+        return tokens[i];
+    }
+
+    /**
+     * @return the round of a {@link Token#FINALS}, the day of a {@link Token#DAY} or the home score of a
+     *         {@link Token#RESULT}
+     */
+    int getValue1(int i) {
+        return values1[i];
+    }
+
+    /**
+     * @return the away score of a {@link Token#RESULT}
+     */
+    int getValue2(int i) {
+        return values2[i];
+    }
+
+    /**
+     * @return the phase name of a {@link Token#TOURNAMENT_PART}, the text of a {@link Token#DATE} or
+     *         {@link Token#TEAM_NAME}
+     */
+    String getText(int i) {
+        return texts[i];
+    }
+
+    /**
+     * @return the line the error occurred in, 0 if the file could not be read
+     */
+    int getErrorLine() {
+        return errorLine;
+    }
+
+    /**
+     * Raise the error that ended tokenizing, if any
+     */
+    void throwError() throws IOException {
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error != null) {
+            throw (RuntimeException) error;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package de.nufta.kicktipper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.goochjs.glicko2.Rating;
+import org.goochjs.glicko2.RatingCalculator;
+
+/**
+ * Binary snapshot of rated seasons: the teams with their glicko ratings, all games with scores, ratings before and
+ * after and the corrected rating differences they were rated with, and the region ratings of the
+ * {@link WorldRepository}. Restoring a snapshot maps the file instead of parsing the result files and replaying every
+ * rating period.
+ *
+ * <pre>
+ * header:  magic "KTSN", format version, fingerprint of the source data, payload length, CRC32 of the payload
+ * payload: string table, mode, teams, seasons with their games, countries, region ratings, rating history
+ * </pre>
+ *
+ * A snapshot whose version or fingerprint does not match, or whose payload is damaged, is ignored.
+ */
+class Snapshot {
+
+    private static final int MAGIC = 0x4B54534E; // "KTSN"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 24;
+    /** a game is written as 9 ints and 5 doubles, a rating as 3 doubles and an int */
+    private static final int GAME_INTS = 9;
+    private static final int GAME_DOUBLES = 5;
+    private static final int RATING_SIZE = 28;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Write the rated seasons of a context. The file is replaced atomically where the file system allows it.
+     *
+     * @param fingerprint identifies the source data the seasons were loaded from
+     */
+    static void write(final Path file, final long fingerprint, final TournamentContext context,
+            final List<Season> seasons) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        List<Team> teams = context.getTeamRepository().getAllTeams();
+        Map<String, Integer> teamIndex = new LinkedHashMap<>();
+        for (Team team : teams) {
+            teamIndex.put(team.getName(), teamIndex.size());
+            intern(strings, team.getName());
+        }
+        for (Season season : seasons) {
+            for (Game game : season.getGames()) {
+                intern(strings, game.getTournamentPhaseName());
+                intern(strings, game.getDate());
+            }
+        }
+        WorldRepository worldRepository = context.getWorldRepository();
+        Map<String, String> worldMap = new LinkedHashMap<>(worldRepository.getWorldMap());
+        for (Map.Entry<String, String> entry : worldMap.entrySet()) {
+            intern(strings, entry.getKey());
+            intern(strings, entry.getValue());
+        }
+        List<Team> regionTeams = new ArrayList<>(worldRepository.getRegionTeams());
+        for (Team team : regionTeams) {
+            intern(strings, team.getName());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+        out.writeInt(context.getMode().ordinal());
+        out.writeInt(teams.size());
+        for (Team team : teams) {
+            out.writeInt(strings.get(team.getName()));
+            writeRating(out, team.getRating());
+        }
+        out.writeInt(seasons.size());
+        for (Season season : seasons) {
+            out.writeInt(season.year);
+            List<Game> games = season.getGames();
+            out.writeInt(games.size());
+            for (Game game : games) {
+                out.writeInt(strings.get(game.getTournamentPhaseName()));
+                out.writeInt(game.getTournamentPhaseNumber());
+                out.writeInt(strings.get(game.getDate()));
+                out.writeInt(game.getSeason());
+                out.writeInt(game.getDay());
+                out.writeInt(teamIndex.get(game.getTeam1().getName()));
+                out.writeInt(teamIndex.get(game.getTeam2().getName()));
+                out.writeInt(game.getScore1());
+                out.writeInt(game.getScore2());
+                out.writeDouble(game.getRatingBefore1());
+                out.writeDouble(game.getRatingBefore2());
+                out.writeDouble(game.getRatingAfter1());
+                out.writeDouble(game.getRatingAfter2());
+                out.writeDouble(context.getGameStore().getRatedDifference(game.getRow()));
+            }
+        }
+        out.writeInt(worldMap.size());
+        for (Map.Entry<String, String> entry : worldMap.entrySet()) {
+            out.writeInt(strings.get(entry.getKey()));
+            out.writeInt(strings.get(entry.getValue()));
+        }
+        out.writeInt(regionTeams.size());
+        for (Team team : regionTeams) {
+            out.writeInt(strings.get(team.getName()));
+            writeRating(out, team.getRating());
+        }
+        RatingHistory history = context.getRatingHistory();
+        for (Team team : teams) {
+            RatingHistory.Range track = history.getAll(team);
+            out.writeInt(track.size());
+            for (int i = 0; i < track.size(); i++) {
+                out.writeLong(track.getKey(i));
+                out.writeDouble(track.getRating(i));
+                out.writeDouble(track.getDeviation(i));
+                out.writeDouble(track.getVolatility(i));
+            }
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp); DataOutputStream header = new DataOutputStream(os)) {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeLong(fingerprint);
+                header.writeInt(payload.length);
+                header.writeInt((int) crc.getValue());
+                header.write(payload);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Restore the seasons of a snapshot into an empty context. The whole payload is decoded before the context is
+     * touched, so a snapshot that turns out to be damaged leaves the context empty for parsing the result files.
+     *
+     * @param fingerprint identifies the current source data
+     * @return the rated seasons, or <code>null</code> if there is no snapshot or it is stale or damaged
+     */
+    static List<Season> read(final Path file, final long fingerprint, final TournamentContext context,
+            final RatingCalculator calc) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != fingerprint) {
+            return null;
+        }
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length != buffer.remaining()) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        Payload payload = decode(buffer, context, calc);
+        return payload == null ? null : apply(payload, context, calc);
+    }
+
+    /**
+     * The content of a snapshot, decoded without touching a context
+     */
+    private static final class Payload {
+        String[] strings;
+        int[] teamNames;
+        Rating[] teamRatings;
+        int[] seasonYears;
+        /** per season its games, {@link #GAME_INTS} ints and {@link #GAME_DOUBLES} doubles each, in file order */
+        int[][] gameInts;
+        double[][] gameDoubles;
+        /** country and region string pairs */
+        int[] countries;
+        int[] regionNames;
+        Rating[] regionRatings;
+        /** per team its rating history, the keys and rating, deviation and volatility of each entry */
+        long[][] historyKeys;
+        double[][] historyValues;
+    }
+
+    /**
+     * @return the payload, or <code>null</code> if it is for another mode
+     * @throws RuntimeException if the payload is inconsistent
+     */
+    private static Payload decode(final ByteBuffer buffer, final TournamentContext context,
+            final RatingCalculator calc) {
+        Payload payload = new Payload();
+        String[] strings = new String[count(buffer, 4)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] utf8 = new byte[count(buffer, 1)];
+            buffer.get(utf8);
+            strings[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        payload.strings = strings;
+        if (buffer.getInt() != context.getMode().ordinal()) {
+            return null;
+        }
+        int teamCount = count(buffer, 4 + RATING_SIZE);
+        payload.teamNames = new int[teamCount];
+        payload.teamRatings = new Rating[teamCount];
+        for (int i = 0; i < teamCount; i++) {
+            payload.teamNames[i] = index(buffer.getInt(), strings.length);
+            payload.teamRatings[i] = readRating(buffer, strings[payload.teamNames[i]], calc);
+        }
+        int seasonCount = count(buffer, 8);
+        payload.seasonYears = new int[seasonCount];
+        payload.gameInts = new int[seasonCount][];
+        payload.gameDoubles = new double[seasonCount][];
+        for (int s = 0; s < seasonCount; s++) {
+            payload.seasonYears[s] = buffer.getInt();
+            int gameCount = count(buffer, GAME_INTS * 4 + GAME_DOUBLES * 8);
+            int[] ints = new int[gameCount * GAME_INTS];
+            double[] doubles = new double[gameCount * GAME_DOUBLES];
+            for (int i = 0; i < ints.length; i += GAME_INTS) {
+                ints[i] = index(buffer.getInt(), strings.length); // phase name
+                ints[i + 1] = buffer.getInt(); // phase number
+                ints[i + 2] = index(buffer.getInt(), strings.length); // date
+                ints[i + 3] = buffer.getInt(); // season
+                ints[i + 4] = buffer.getInt(); // day
+                ints[i + 5] = index(buffer.getInt(), teamCount);
+                ints[i + 6] = index(buffer.getInt(), teamCount);
+                ints[i + 7] = buffer.getInt(); // scores
+                ints[i + 8] = buffer.getInt();
+                int d = i / GAME_INTS * GAME_DOUBLES;
+                for (int j = 0; j < GAME_DOUBLES; j++) {
+                    doubles[d + j] = buffer.getDouble();
+                }
+            }
+            payload.gameInts[s] = ints;
+            payload.gameDoubles[s] = doubles;
+        }
+        int countryCount = count(buffer, 8);
+        payload.countries = new int[countryCount * 2];
+        for (int i = 0; i < payload.countries.length; i++) {
+            payload.countries[i] = index(buffer.getInt(), strings.length);
+        }
+        int regionCount = count(buffer, 4 + RATING_SIZE);
+        payload.regionNames = new int[regionCount];
+        payload.regionRatings = new Rating[regionCount];
+        for (int i = 0; i < regionCount; i++) {
+            payload.regionNames[i] = index(buffer.getInt(), strings.length);
+            payload.regionRatings[i] = readRating(buffer, strings[payload.regionNames[i]], calc);
+        }
+        payload.historyKeys = new long[teamCount][];
+        payload.historyValues = new double[teamCount][];
+        for (int t = 0; t < teamCount; t++) {
+            int entries = count(buffer, 8 + 3 * 8);
+            long[] keys = new long[entries];
+            double[] values = new double[entries * 3];
+            for (int i = 0; i < entries; i++) {
+                keys[i] = buffer.getLong();
+                values[i * 3] = buffer.getDouble();
+                values[i * 3 + 1] = buffer.getDouble();
+                values[i * 3 + 2] = buffer.getDouble();
+            }
+            payload.historyKeys[t] = keys;
+            payload.historyValues[t] = values;
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalStateException(buffer.remaining() + " bytes after the rating history");
+        }
+        return payload;
+    }
+
+    /**
+     * Restore a decoded payload into an empty context
+     */
+    private static List<Season> apply(final Payload payload, final TournamentContext context,
+            final RatingCalculator calc) {
+        String[] strings = payload.strings;
+        TeamRepository teamRepository = context.getTeamRepository();
+        Team[] teams = new Team[payload.teamNames.length];
+        for (int i = 0; i < teams.length; i++) {
+            teams[i] = teamRepository.getTeam(strings[payload.teamNames[i]], null, calc);
+            restoreRating(teams[i].getRating(), payload.teamRatings[i]);
+        }
+        GameStore store = context.getGameStore();
+        List<Season> seasons = new ArrayList<>();
+        for (int s = 0; s < payload.seasonYears.length; s++) {
+            Season season = new Season(context, payload.seasonYears[s], calc);
+            int[] ints = payload.gameInts[s];
+            double[] doubles = payload.gameDoubles[s];
+            for (int i = 0, d = 0; i < ints.length; i += GAME_INTS, d += GAME_DOUBLES) {
+                Game game = new Game(context, strings[ints[i]], ints[i + 1], strings[ints[i + 2]], ints[i + 3],
+                        ints[i + 4], teams[ints[i + 5]], teams[ints[i + 6]], ints[i + 7], ints[i + 8]);
+                game.setRatingBefore1(doubles[d]);
+                game.setRatingBefore2(doubles[d + 1]);
+                game.setRatingAfter1(doubles[d + 2]);
+                game.setRatingAfter2(doubles[d + 3]);
+                store.setRatedDifference(game.getRow(), doubles[d + 4]);
+                season.addGame(game);
+            }
+            season.rated = true;
+            seasons.add(season);
+        }
+        WorldRepository worldRepository = context.getWorldRepository();
+        for (int i = 0; i < payload.countries.length; i += 2) {
+            worldRepository.restoreCountry(strings[payload.countries[i]], strings[payload.countries[i + 1]]);
+        }
+        for (int i = 0; i < payload.regionNames.length; i++) {
+            worldRepository.restoreRegion(strings[payload.regionNames[i]], payload.regionRatings[i]);
+        }
+        RatingHistory history = context.getRatingHistory();
+        for (int t = 0; t < teams.length; t++) {
+            long[] keys = payload.historyKeys[t];
+            double[] values = payload.historyValues[t];
+            for (int i = 0; i < keys.length; i++) {
+                history.record(teams[t].getId(), keys[i], values[i * 3], values[i * 3 + 1], values[i * 3 + 2]);
+            }
+        }
+        // the head-to-head records follow from the games, in the order they were rated
+        HeadToHead headToHead = context.getHeadToHead();
+        for (Season season : seasons) {
+            for (Game game : season.getGames()) {
+                headToHead.record(game.getRow());
+            }
+        }
+        context.advanceRatingVersion();
+        return seasons;
+    }
+
+    /**
+     * Read the number of records that follow
+     *
+     * @param recordSize the least number of bytes of a record
+     * @throws BufferUnderflowException if there are not enough bytes left for that many records
+     */
+    private static int count(final ByteBuffer buffer, final int recordSize) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / recordSize) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the index is not below size
+     */
+    private static int index(final int index, final int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index + " of " + size);
+        }
+        return index;
+    }
+
+    private static void intern(Map<String, Integer> strings, String string) {
+        if (!strings.containsKey(string)) {
+            strings.put(string, strings.size());
+        }
+    }
+
+    private static void writeRating(DataOutputStream out, Rating rating) throws IOException {
+        out.writeDouble(rating.getRating());
+        out.writeDouble(rating.getRatingDeviation());
+        out.writeDouble(rating.getVolatility());
+        out.writeInt(rating.getNumberOfResults());
+    }
+
+    private static Rating readRating(ByteBuffer buffer, String name, RatingCalculator calc) {
+        Rating rating = new Rating(name, calc);
+        rating.setRating(buffer.getDouble());
+        rating.setRatingDeviation(buffer.getDouble());
+        rating.setVolatility(buffer.getDouble());
+        rating.incrementNumberOfResults(buffer.getInt() - rating.getNumberOfResults());
+        return rating;
+    }
+
+    private static void restoreRating(Rating rating, Rating restored) {
+        rating.setRating(restored.getRating());
+        rating.setRatingDeviation(restored.getRatingDeviation());
+        rating.setVolatility(restored.getVolatility());
+        rating.incrementNumberOfResults(restored.getNumberOfResults() - rating.getNumberOfResults());
+    }
+}
@@ -4,14 +4,27 @@ import org.goochjs.glicko2.Rating;
 
 public class Team {
 
+    private final int id;
     private final String name;
     private Rating rating;
 
     public Team(String name, Rating rating) {
+        this(-1, name, rating);
+    }
+
+    Team(int id, String name, Rating rating) {
+        this.id = id;
         this.name = name;
         this.rating = rating;
     }
 
+    /**
+     * @return the id of this team in its {@link TeamRepository}, -1 for teams not kept in one
+     */
+    int getId() {
+        return id;
+    }
+
     /**
      * @return the name
      */
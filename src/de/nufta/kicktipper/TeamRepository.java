@@ -1,8 +1,9 @@
 package de.nufta.kicktipper;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.goochjs.glicko2.Rating;
 import org.goochjs.glicko2.RatingCalculator;
@@ -11,34 +12,54 @@ import de.nufta.kicktipper.KickTipper.Mode;
 
 public class TeamRepository {
 
-    Hashtable<String, Team> teams = new Hashtable<String, Team>();
-    private static TeamRepository instance = new TeamRepository();
-    
-    private TeamRepository() {
-    }
-    
-    public static TeamRepository getInstance() {
-        return instance;
+    private final ConcurrentHashMap<String, Team> teams = new ConcurrentHashMap<String, Team>();
+    /** teams by their dense id */
+    private volatile Team[] byId = new Team[64];
+    private int count;
+    private final Mode mode;
+
+    TeamRepository(final Mode mode) {
+        this.mode = mode;
     }
-    
+
     /**
      * Gets (and creates if necessary) a Team
      * @param name
      */
     public Team getTeam(String name, Season previousSeason, RatingCalculator calc) {
+        // known teams are the common case while parsing, look them up without allocating the mapping function
         Team team = teams.get(name);
-        if (team == null) {
-            if (previousSeason == null || KickTipper.getMode().equals(Mode.WORLD_CUP)) {
-                team = new Team(name, new Rating(name,calc));
-                teams.put(name, team);
+        if (team != null) {
+            return team;
+        }
+        return teams.computeIfAbsent(name, n -> {
+            if (previousSeason == null || mode.equals(Mode.WORLD_CUP)) {
+                return register(n, new Rating(n, calc));
             } else {
-                team = new Team(name, new Rating(name, calc, previousSeason.getRelegationRating(), calc.getDefaultRatingDeviation(), calc.getDefaultVolatility()));
-                teams.put(name, team);
+                return register(n, new Rating(n, calc, previousSeason.getRelegationRating(),
+                        calc.getDefaultRatingDeviation(), calc.getDefaultVolatility()));
             }
+        });
+    }
+
+    /**
+     * Gets a team by its id
+     */
+    Team getTeam(int id) {
+        return byId[id];
+    }
+
+    private synchronized Team register(String name, Rating rating) {
+        Team team = new Team(count, name, rating);
+        Team[] current = byId;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
         }
+        current[count++] = team;
+        byId = current;
         return team;
     }
-    
+
     public List<Team> getAllTeams() {
         return new ArrayList<Team>(teams.values());
     }
@@ -0,0 +1,127 @@
+package de.nufta.kicktipper;
+
+/**
+ * Picks the tip with the most expected points under {@link KicktippRules} instead of the rounded average score. The
+ * historical games a prediction is averaged from are collected with their weights in a {@link Grid} of results; the
+ * expected points of a tip are the weighted sum of the points it would score against each result. The points of every
+ * tip against every result are computed once, so evaluating a fixture is a few thousand multiplications.
+ * <p>
+ * Immutable once created, one instance can be shared by any number of threads; every thread needs its own grid.
+ */
+class TipOptimizer {
+
+    /** goals of a team in a tip, higher tips never pay off */
+    static final int MAX_TIP = 7;
+    /** goals of a team in a result, more are counted as this many */
+    static final int MAX_GOALS = 15;
+
+    private static final int TIP_GOALS = MAX_TIP + 1;
+    private static final int GOALS = MAX_GOALS + 1;
+    private static final int RESULTS = GOALS * GOALS;
+
+    /** points of tip t against result r at t * RESULTS + r, tips and results as home goals * goals + away goals */
+    private final int[] points = new int[TIP_GOALS * TIP_GOALS * RESULTS];
+
+    /**
+     * Creates a new Instance
+     *
+     * @param rules points of a tip
+     */
+    TipOptimizer(final KicktippRules rules) {
+        for (int tip1 = 0; tip1 <= MAX_TIP; tip1++) {
+            for (int tip2 = 0; tip2 <= MAX_TIP; tip2++) {
+                int offset = (tip1 * TIP_GOALS + tip2) * RESULTS;
+                for (int result1 = 0; result1 <= MAX_GOALS; result1++) {
+                    for (int result2 = 0; result2 <= MAX_GOALS; result2++) {
+                        points[offset + result1 * GOALS + result2] = rules.getPoints(tip1, tip2, result1, result2);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Weights of the results a prediction is made from. Not thread-safe, reused for the fixtures of a thread.
+     */
+    static final class Grid {
+        private final double[] weights = new double[RESULTS];
+        /** the results with a weight, in the order they were first added */
+        private final int[] results = new int[RESULTS];
+        private int size;
+        private double total;
+
+        /**
+         * Add a result with a weight
+         */
+        void add(final int score1, final int score2, final double weight) {
+            if (weight <= 0) {
+                return;
+            }
+            int result = Math.min(score1, MAX_GOALS) * GOALS + Math.min(score2, MAX_GOALS);
+            if (weights[result] == 0) {
+                results[size++] = result;
+            }
+            weights[result] += weight;
+            total += weight;
+        }
+
+        /**
+         * Remove all results
+         */
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                weights[results[i]] = 0;
+            }
+            size = 0;
+            total = 0;
+        }
+
+        /**
+         * @return the sum of the weights
+         */
+        double getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * @param grid the results to tip, must not be empty
+     * @return home and away goals of the tip with the most expected points, on a tie the one with fewer home goals,
+     *         then with fewer away goals
+     */
+    int[] bestTip(final Grid grid) {
+        int best = 0;
+        double bestPoints = -1;
+        for (int tip = 0; tip < TIP_GOALS * TIP_GOALS; tip++) {
+            double sum = sum(grid, tip);
+            if (sum > bestPoints) {
+                best = tip;
+                bestPoints = sum;
+            }
+        }
+        return new int[] { best / TIP_GOALS, best % TIP_GOALS };
+    }
+
+    /**
+     * @return the expected points of a tip of at most {@link #MAX_TIP} goals per team
+     */
+    double getExpectedPoints(final Grid grid, final int tip1, final int tip2) {
+        if (tip1 < 0 || tip2 < 0 || tip1 > MAX_TIP || tip2 > MAX_TIP) {
+            throw new IllegalArgumentException("Tip " + tip1 + ":" + tip2 + " out of range");
+        }
+        return grid.total == 0 ? 0 : sum(grid, tip1 * TIP_GOALS + tip2) / grid.total;
+    }
+
+    /**
+     * @return the weighted points of a tip against the results of the grid
+     */
+    private double sum(final Grid grid, final int tip) {
+        int offset = tip * RESULTS;
+        double sum = 0;
+        for (int i = 0; i < grid.size; i++) {
+            int result = grid.results[i];
+            sum += grid.weights[result] * points[offset + result];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,101 @@
+package de.nufta.kicktipper;
+
+import org.goochjs.glicko2.RatingCalculator;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * Everything that belongs to one tournament model: its mode, its teams, games, rating history and head-to-head
+ * records and (for world cups)
+ * the region map. Contexts share nothing, so several leagues and tournaments can be loaded and predicted in one JVM at
+ * the same time.
+ */
+class TournamentContext {
+
+    private final Mode mode;
+    private final TeamRepository teamRepository;
+    private final WorldRepository worldRepository;
+    private final GameStore gameStore;
+    private final RatingHistory ratingHistory;
+    private final HeadToHead headToHead;
+
+    private final RatingEngine.Kind ratingEngine;
+
+    /** changes whenever a team rating changes */
+    private volatile int ratingVersion = 1;
+
+    TournamentContext(final Mode mode) {
+        this(mode, RatingEngine.Kind.GLICKO2);
+    }
+
+    TournamentContext(final Mode mode, final RatingEngine.Kind ratingEngine) {
+        this.mode = mode;
+        this.ratingEngine = ratingEngine;
+        this.teamRepository = new TeamRepository(mode);
+        this.worldRepository = new WorldRepository(ratingEngine);
+        this.gameStore = new GameStore();
+        this.ratingHistory = new RatingHistory();
+        this.headToHead = new HeadToHead(gameStore);
+    }
+
+    /**
+     * @return Tournament Mode
+     */
+    Mode getMode() {
+        return mode;
+    }
+
+    TeamRepository getTeamRepository() {
+        return teamRepository;
+    }
+
+    WorldRepository getWorldRepository() {
+        return worldRepository;
+    }
+
+    /**
+     * @return the kind of rating engine seasons of this context are rated with
+     */
+    RatingEngine.Kind getRatingEngine() {
+        return ratingEngine;
+    }
+
+    /**
+     * @return a new rating engine of the kind used by this context
+     */
+    RatingEngine createRatingEngine(RatingCalculator calc) {
+        return ratingEngine.create(calc);
+    }
+
+    /**
+     * Note that team ratings have changed: a season or matchday was rated or the ratings were restored
+     */
+    synchronized void advanceRatingVersion() {
+        ratingVersion++;
+    }
+
+    /**
+     * @return the version of the rating state, changes whenever a team rating or a world cup correction changes
+     */
+    long getRatingVersion() {
+        return (long) ratingVersion << 32 | worldRepository.getVersion();
+    }
+
+    GameStore getGameStore() {
+        return gameStore;
+    }
+
+    /**
+     * @return the ratings of all teams after every period they played in
+     */
+    RatingHistory getRatingHistory() {
+        return ratingHistory;
+    }
+
+    /**
+     * @return the rated games of every pair of teams
+     */
+    HeadToHead getHeadToHead() {
+        return headToHead;
+    }
+}
@@ -0,0 +1,576 @@
+package de.nufta.kicktipper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Monte-Carlo simulation of the rest of a tournament. Every open fixture is played many times with goals drawn from a
+ * Poisson distribution around the expected goals of the {@link PredictionEngine}, giving the probabilities of group
+ * placings, of reaching each knockout round and of winning the tournament.
+ * <p>
+ * Groups are the sets of teams connected by group games (everything before {@link SeasonParser#FINALS_OFFSET}) of the
+ * predicted tournament phase; a league is a single group. Groups are ranked by points, goal difference and goals, the
+ * remaining ties are drawn. The knockout bracket starts with the earliest knockout round among the fixtures, winners
+ * of neighbouring fixtures meeting in the next round. Without knockout fixtures and with a power of two of groups,
+ * the bracket is built from the groups in order of their first kick-off like in a world cup: 1A-2B, 1C-2D, ..., 1B-2A,
+ * 1D-2C, ... Draws in the knockout rounds are decided by a coin toss (extra time and penalties).
+ */
+class TournamentSimulator {
+
+    /** Below this number of runs a task is not split any further */
+    private static final int SPLIT_THRESHOLD = 10_000;
+    private static final int THIRD_PLACE = 3;
+
+    private final List<Team> teams = new ArrayList<>();
+    /** teams of each group */
+    private final int[][] groups;
+
+    /** points, goals and goals against from the group games already played */
+    private final int[] basePoints, baseGoals, baseGoalsAgainst;
+
+    /** open group fixtures */
+    private final int[] fixtureHome, fixtureAway;
+    private final double[] fixtureHomeLimit, fixtureAwayLimit;
+
+    /** teams of the first knockout round, two per match, <code>null</code> if there is no knockout */
+    private final int[] bracket;
+    /** bracket slot of group placing: slot to group and to place (0 = winner) */
+    private final int[] bracketGroup, bracketPlace;
+    private final String[] stageNames;
+
+    /** exp(-expected goals) of home and away team for every pair of teams, row = home team */
+    private final double[] homeLimit, awayLimit;
+
+    /**
+     * Creates a new Instance
+     *
+     * @param context the tournament
+     * @param engine predicts the expected goals of a fixture
+     * @param played games of the tournament already played, only the group games are used
+     * @param fixtures the open fixtures
+     */
+    TournamentSimulator(final TournamentContext context, final PredictionEngine engine, final List<Game> played,
+            final List<Game> fixtures) {
+        Map<Team, Integer> index = new HashMap<>();
+        Set<String> phases = new HashSet<>();
+        for (Game game : fixtures) {
+            phases.add(game.getTournamentPhaseName());
+        }
+        List<Game> groupGames = new ArrayList<>();
+        for (Game game : played) {
+            if (phases.contains(game.getTournamentPhaseName()) && game.getDay() < SeasonParser.FINALS_OFFSET) {
+                groupGames.add(game);
+            }
+        }
+        List<Game> openGroupGames = new ArrayList<>();
+        List<Game> knockoutGames = new ArrayList<>();
+        int firstRound = Integer.MAX_VALUE;
+        for (Game game : fixtures) {
+            if (game.getDay() < SeasonParser.FINALS_OFFSET) {
+                openGroupGames.add(game);
+            } else if (game.getDay() - SeasonParser.FINALS_OFFSET != THIRD_PLACE) {
+                firstRound = Math.min(firstRound, game.getDay());
+            }
+        }
+        for (Game game : fixtures) {
+            if (game.getDay() == firstRound) {
+                knockoutGames.add(game);
+            }
+        }
+        groupGames.addAll(openGroupGames);
+        groupGames.sort((g1, g2) -> Integer.compare(kickOff(g1.getDate()), kickOff(g2.getDate())));
+        for (Game game : groupGames) {
+            index(index, game.getTeam1());
+            index(index, game.getTeam2());
+        }
+        for (Game game : knockoutGames) {
+            index(index, game.getTeam1());
+            index(index, game.getTeam2());
+        }
+        final int n = teams.size();
+
+        // groups: connected teams, in order of their first game
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (Game game : groupGames) {
+            int root1 = find(parent, index.get(game.getTeam1()));
+            int root2 = find(parent, index.get(game.getTeam2()));
+            parent[Math.max(root1, root2)] = Math.min(root1, root2);
+        }
+        // group of each team, -1 if the team plays no group games
+        int[] group = new int[n];
+        Arrays.fill(group, -1);
+        int[] groupOfRoot = new int[n];
+        Arrays.fill(groupOfRoot, -1);
+        int groupCount = 0;
+        int[] groupSize = new int[n];
+        for (Game game : groupGames) {
+            for (Team team : new Team[] { game.getTeam1(), game.getTeam2() }) {
+                int t = index.get(team);
+                int root = find(parent, t);
+                if (groupOfRoot[root] < 0) {
+                    groupOfRoot[root] = groupCount++;
+                }
+                if (group[t] < 0) {
+                    group[t] = groupOfRoot[root];
+                    groupSize[group[t]]++;
+                }
+            }
+        }
+        groups = new int[groupCount][];
+        for (int g = 0; g < groupCount; g++) {
+            groups[g] = new int[groupSize[g]];
+            groupSize[g] = 0;
+        }
+        for (int t = 0; t < n; t++) {
+            if (group[t] >= 0) {
+                groups[group[t]][groupSize[group[t]]++] = t;
+            }
+        }
+
+        basePoints = new int[n];
+        baseGoals = new int[n];
+        baseGoalsAgainst = new int[n];
+        for (Game game : played) {
+            if (phases.contains(game.getTournamentPhaseName()) && game.getDay() < SeasonParser.FINALS_OFFSET) {
+                addResult(basePoints, baseGoals, baseGoalsAgainst, index.get(game.getTeam1()),
+                        index.get(game.getTeam2()), game.getScore1(), game.getScore2());
+            }
+        }
+
+        // knockout bracket
+        if (!knockoutGames.isEmpty()) {
+            bracket = new int[knockoutGames.size() * 2];
+            for (int i = 0; i < knockoutGames.size(); i++) {
+                bracket[2 * i] = index.get(knockoutGames.get(i).getTeam1());
+                bracket[2 * i + 1] = index.get(knockoutGames.get(i).getTeam2());
+            }
+            bracketGroup = bracketPlace = null;
+        } else if (groupCount >= 2 && Integer.bitCount(groupCount) == 1) {
+            bracket = new int[groupCount * 2];
+            bracketGroup = new int[bracket.length];
+            bracketPlace = new int[bracket.length];
+            for (int g = 0; g < groupCount; g++) {
+                int pair = g ^ 1;
+                int match = g % 2 == 0 ? g / 2 : groupCount / 2 + g / 2;
+                bracketGroup[2 * match] = g;
+                bracketPlace[2 * match] = 0;
+                bracketGroup[2 * match + 1] = pair;
+                bracketPlace[2 * match + 1] = 1;
+            }
+        } else {
+            bracket = null;
+            bracketGroup = bracketPlace = null;
+        }
+        if (bracket != null) {
+            List<String> names = new ArrayList<>();
+            for (int size = bracket.length; size > 1; size = (size + 1) / 2) {
+                names.add(stageName(size));
+            }
+            names.add("Sieger");
+            stageNames = names.toArray(new String[names.size()]);
+        } else if (groupCount == 1) {
+            stageNames = new String[] { "Sieger" };
+        } else {
+            stageNames = new String[0];
+        }
+
+        // expected goals
+        homeLimit = new double[n * n];
+        awayLimit = new double[n * n];
+        WorldRepository worldRepository = context.getWorldRepository();
+        boolean[] needed = new boolean[n * n];
+        for (Game game : openGroupGames) {
+            needed[index.get(game.getTeam1()) * n + index.get(game.getTeam2())] = true;
+        }
+        if (bracket != null) {
+            Arrays.fill(needed, true);
+        }
+        for (int home = 0; home < n; home++) {
+            for (int away = 0; away < n; away++) {
+                if (needed[home * n + away] && home != away) {
+                    double rating1 = teams.get(home).getRating().getRating();
+                    double rating2 = teams.get(away).getRating().getRating();
+                    double diff = rating1 - rating2
+                            + worldRepository.getCorrection(teams.get(home).getName(), teams.get(away).getName());
+                    double[] goals = engine.expectedGoals(teams.get(home), teams.get(away), rating1, diff);
+                    homeLimit[home * n + away] = limit(goals[0]);
+                    awayLimit[home * n + away] = limit(goals[1]);
+                }
+            }
+        }
+        fixtureHome = new int[openGroupGames.size()];
+        fixtureAway = new int[openGroupGames.size()];
+        fixtureHomeLimit = new double[openGroupGames.size()];
+        fixtureAwayLimit = new double[openGroupGames.size()];
+        for (int i = 0; i < openGroupGames.size(); i++) {
+            int home = index.get(openGroupGames.get(i).getTeam1());
+            int away = index.get(openGroupGames.get(i).getTeam2());
+            fixtureHome[i] = home;
+            fixtureAway[i] = away;
+            fixtureHomeLimit[i] = homeLimit[home * n + away];
+            fixtureAwayLimit[i] = awayLimit[home * n + away];
+        }
+    }
+
+    private void index(Map<Team, Integer> index, Team team) {
+        if (!index.containsKey(team)) {
+            index.put(team, teams.size());
+            teams.add(team);
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Sortable kick-off of a date like "25.06. 16:00", {@link Integer#MAX_VALUE} if it can not be read
+     */
+    static int kickOff(String date) {
+        int[] numbers = new int[4];
+        int count = 0;
+        int value = -1;
+        for (int i = 0; i <= date.length() && count < numbers.length; i++) {
+            char c = i < date.length() ? date.charAt(i) : ' ';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+            } else if (value >= 0) {
+                numbers[count++] = value;
+                value = -1;
+            }
+        }
+        if (count < numbers.length) {
+            return Integer.MAX_VALUE;
+        }
+        return ((numbers[1] * 32 + numbers[0]) * 24 + numbers[2]) * 60 + numbers[3];
+    }
+
+    private static String stageName(int teams) {
+        switch (teams) {
+            case 16:
+                return SeasonParser.FINALS_NAMES[0];
+            case 8:
+                return SeasonParser.FINALS_NAMES[1];
+            case 4:
+                return SeasonParser.FINALS_NAMES[2];
+            case 2:
+                return SeasonParser.FINALS_NAMES[4];
+            default:
+                return "Runde der " + teams;
+        }
+    }
+
+    /**
+     * exp(-lambda) for drawing goals, no goals for unknown expectations
+     */
+    private static double limit(double expectedGoals) {
+        return expectedGoals > 0 ? Math.exp(-expectedGoals) : 1;
+    }
+
+    private static void addResult(int[] points, int[] goals, int[] goalsAgainst, int home, int away, int score1,
+            int score2) {
+        goals[home] += score1;
+        goalsAgainst[home] += score2;
+        goals[away] += score2;
+        goalsAgainst[away] += score1;
+        if (score1 > score2) {
+            points[home] += 3;
+        } else if (score1 < score2) {
+            points[away] += 3;
+        } else {
+            points[home]++;
+            points[away]++;
+        }
+    }
+
+    /**
+     * Simulate the tournament
+     *
+     * @param runs number of simulated tournaments
+     * @param seed seed of the random numbers, the same seed gives the same probabilities
+     * @param pool pool for parallel runs, <code>null</code> to simulate sequentially
+     */
+    Probabilities simulate(final int runs, final long seed, final ForkJoinPool pool) {
+        SimulateTask task = new SimulateTask(0, runs, new SplittableRandom(seed));
+        Counts counts = pool == null ? task.compute() : pool.invoke(task);
+        return new Probabilities(counts, runs);
+    }
+
+    /**
+     * Per-task accumulators and working state
+     */
+    private class Counts {
+        final long[] first = new long[teams.size()];
+        final long[] second = new long[teams.size()];
+        /** reached stage s: index s * teams + team */
+        final long[] reached = new long[stageNames.length * teams.size()];
+
+        final int[] points = new int[teams.size()];
+        final int[] goals = new int[teams.size()];
+        final int[] goalsAgainst = new int[teams.size()];
+        final int[] tieBreak = new int[teams.size()];
+        final int[][] ranking = new int[groups.length][];
+        final int[] slots = bracket != null ? new int[bracket.length] : null;
+
+        Counts() {
+            for (int g = 0; g < groups.length; g++) {
+                ranking[g] = new int[groups[g].length];
+            }
+        }
+
+        void add(Counts other) {
+            for (int i = 0; i < first.length; i++) {
+                first[i] += other.first[i];
+                second[i] += other.second[i];
+            }
+            for (int i = 0; i < reached.length; i++) {
+                reached[i] += other.reached[i];
+            }
+        }
+
+        void run(SplittableRandom random) {
+            System.arraycopy(basePoints, 0, points, 0, points.length);
+            System.arraycopy(baseGoals, 0, goals, 0, goals.length);
+            System.arraycopy(baseGoalsAgainst, 0, goalsAgainst, 0, goalsAgainst.length);
+            for (int i = 0; i < fixtureHome.length; i++) {
+                addResult(points, goals, goalsAgainst, fixtureHome[i], fixtureAway[i],
+                        poisson(random, fixtureHomeLimit[i]), poisson(random, fixtureAwayLimit[i]));
+            }
+            for (int t = 0; t < tieBreak.length; t++) {
+                tieBreak[t] = random.nextInt();
+            }
+            for (int g = 0; g < groups.length; g++) {
+                int[] rank = ranking[g];
+                System.arraycopy(groups[g], 0, rank, 0, rank.length);
+                // insertion sort, groups are small
+                for (int i = 1; i < rank.length; i++) {
+                    int t = rank[i];
+                    int j = i - 1;
+                    while (j >= 0 && better(t, rank[j])) {
+                        rank[j + 1] = rank[j];
+                        j--;
+                    }
+                    rank[j + 1] = t;
+                }
+                first[rank[0]]++;
+                if (rank.length > 1) {
+                    second[rank[1]]++;
+                }
+            }
+            if (bracket == null) {
+                if (groups.length == 1) {
+                    reached[ranking[0][0]]++;
+                }
+                return;
+            }
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = bracketGroup == null ? bracket[i] : rankingOf(bracketGroup[i], bracketPlace[i]);
+            }
+            final int n = teams.size();
+            int size = slots.length;
+            for (int stage = 0;; stage++) {
+                for (int i = 0; i < size; i++) {
+                    if (slots[i] >= 0) {
+                        reached[stage * n + slots[i]]++;
+                    }
+                }
+                if (size == 1) {
+                    break;
+                }
+                for (int i = 0; i < size / 2; i++) {
+                    slots[i] = play(random, slots[2 * i], slots[2 * i + 1]);
+                }
+                if (size % 2 == 1) {
+                    // bye
+                    slots[size / 2] = slots[size - 1];
+                }
+                size = (size + 1) / 2;
+            }
+        }
+
+        private int rankingOf(int group, int place) {
+            return place < ranking[group].length ? ranking[group][place] : -1;
+        }
+
+        private boolean better(int t1, int t2) {
+            if (points[t1] != points[t2]) {
+                return points[t1] > points[t2];
+            }
+            int difference1 = goals[t1] - goalsAgainst[t1];
+            int difference2 = goals[t2] - goalsAgainst[t2];
+            if (difference1 != difference2) {
+                return difference1 > difference2;
+            }
+            if (goals[t1] != goals[t2]) {
+                return goals[t1] > goals[t2];
+            }
+            return tieBreak[t1] > tieBreak[t2];
+        }
+
+        /**
+         * Play a knockout match
+         *
+         * @return the winner
+         */
+        private int play(SplittableRandom random, int home, int away) {
+            if (home < 0 || away < 0) {
+                return Math.max(home, away);
+            }
+            int pair = home * teams.size() + away;
+            int score1 = poisson(random, homeLimit[pair]);
+            int score2 = poisson(random, awayLimit[pair]);
+            if (score1 == score2) {
+                return random.nextBoolean() ? home : away;
+            }
+            return score1 > score2 ? home : away;
+        }
+    }
+
+    /**
+     * Draw a Poisson distributed number of goals (Knuth)
+     *
+     * @param limit exp(-expected goals)
+     */
+    private static int poisson(SplittableRandom random, double limit) {
+        int goals = 0;
+        double p = random.nextDouble();
+        while (p > limit) {
+            goals++;
+            p *= random.nextDouble();
+        }
+        return goals;
+    }
+
+    private class SimulateTask extends RecursiveTask<Counts> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final SplittableRandom random;
+
+        SimulateTask(final int from, final int to, final SplittableRandom random) {
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Counts counts = new Counts();
+                for (int i = from; i < to; i++) {
+                    counts.run(random);
+                }
+                return counts;
+            }
+            int mid = (from + to) >>> 1;
+            SimulateTask right = new SimulateTask(mid, to, random.split());
+            SimulateTask left = new SimulateTask(from, mid, random);
+            Counts counts;
+            if (inForkJoinPool()) {
+                right.fork();
+                counts = left.compute();
+                counts.add(right.join());
+            } else {
+                counts = left.compute();
+                counts.add(right.compute());
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Result of a simulation
+     */
+    class Probabilities {
+
+        private final Counts counts;
+        private final int runs;
+
+        private Probabilities(final Counts counts, final int runs) {
+            this.counts = counts;
+            this.runs = runs;
+        }
+
+        /**
+         * @return probability of the team winning its group
+         */
+        double getGroupWinner(Team team) {
+            int t = teams.indexOf(team);
+            return t < 0 ? 0 : (double) counts.first[t] / runs;
+        }
+
+        /**
+         * @return probability of the team finishing second in its group
+         */
+        double getGroupRunnerUp(Team team) {
+            int t = teams.indexOf(team);
+            return t < 0 ? 0 : (double) counts.second[t] / runs;
+        }
+
+        /**
+         * @return probability of the team winning the tournament
+         */
+        double getChampion(Team team) {
+            return stageNames.length == 0 ? 0 : getReached(team, stageNames.length - 1);
+        }
+
+        /**
+         * @param stage knockout stage, 0 = first knockout round, the last stage is winning the tournament
+         * @return probability of the team reaching the stage
+         */
+        double getReached(Team team, int stage) {
+            int t = teams.indexOf(team);
+            return t < 0 ? 0 : (double) counts.reached[stage * teams.size() + t] / runs;
+        }
+
+        @Override
+        public String toString() {
+            final int n = teams.size();
+            Integer[] order = new Integer[n];
+            for (int t = 0; t < n; t++) {
+                order[t] = t;
+            }
+            final int last = (stageNames.length - 1) * n;
+            Arrays.sort(order, (t1, t2) -> {
+                for (int stage = last; stage >= 0; stage -= n) {
+                    int c = Long.compare(counts.reached[stage + t2], counts.reached[stage + t1]);
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return Long.compare(counts.first[t2] + counts.second[t2], counts.first[t1] + counts.second[t1]);
+            });
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%-24s %7s %7s", "Team", "1.", "2."));
+            for (String stage : stageNames) {
+                sb.append(String.format(Locale.ROOT, " %13s", stage));
+            }
+            sb.append("\n");
+            for (int t : order) {
+                sb.append(String.format(Locale.ROOT, "%-24s %6.1f%% %6.1f%%", teams.get(t).getName(),
+                        100.0 * counts.first[t] / runs, 100.0 * counts.second[t] / runs));
+                for (int stage = 0; stage < stageNames.length; stage++) {
+                    sb.append(String.format(Locale.ROOT, " %12.1f%%", 100.0 * counts.reached[stage * n + t] / runs));
+                }
+                sb.append("\n");
+            }
+            return sb.toString();
+        }
+    }
+}
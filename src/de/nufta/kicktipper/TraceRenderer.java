@@ -0,0 +1,170 @@
+package de.nufta.kicktipper;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.nufta.kicktipper.KickTipper.Mode;
+
+/**
+ * Prints a {@link PredictionTrace} as text, fixture by fixture in the order of the predicted fixtures, with the
+ * historical games every prediction was averaged from.
+ */
+class TraceRenderer {
+
+    private final Map<Integer, String> teams = new HashMap<>();
+    private final List<Fixture> fixtures = new ArrayList<>();
+    private final DecimalFormat format = new DecimalFormat("0.00");
+    private Mode mode;
+
+    private static final class Fixture {
+        int index, id, team1, team2, season, day;
+        double rating1, diff;
+        float home, away;
+        int scanned;
+        int[] ids, teams1, teams2, seasons;
+        byte[] scores1, scores2;
+        float[] qualities, weights;
+    }
+
+    /**
+     * Read a trace
+     *
+     * @throws IOException if the trace can't be read or is not a trace
+     */
+    void read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != PredictionTrace.MAGIC) {
+            throw new IOException("Not a prediction trace");
+        }
+        int version = in.readInt();
+        if (version != PredictionTrace.VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+        mode = Mode.values()[in.readInt()];
+        for (;;) {
+            byte type = in.readByte();
+            switch (type) {
+                case PredictionTrace.END:
+                    fixtures.sort(Comparator.comparingInt(f -> f.index));
+                    return;
+                case PredictionTrace.TEAM:
+                    int id = in.readInt();
+                    byte[] name = new byte[in.readInt()];
+                    in.readFully(name);
+                    teams.put(id, new String(name, StandardCharsets.UTF_8));
+                    break;
+                case PredictionTrace.FIXTURE:
+                    fixtures.add(readFixture(in));
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+        }
+    }
+
+    private static Fixture readFixture(DataInputStream in) throws IOException {
+        Fixture f = new Fixture();
+        f.index = in.readInt();
+        f.id = in.readInt();
+        f.team1 = in.readInt();
+        f.team2 = in.readInt();
+        f.season = in.readShort();
+        f.day = in.readShort();
+        f.rating1 = in.readDouble();
+        f.diff = in.readDouble();
+        f.home = in.readFloat();
+        f.away = in.readFloat();
+        f.scanned = in.readInt();
+        int n = in.readShort() & 0xFFFF;
+        f.ids = new int[n];
+        f.teams1 = new int[n];
+        f.teams2 = new int[n];
+        f.seasons = new int[n];
+        f.scores1 = new byte[n];
+        f.scores2 = new byte[n];
+        f.qualities = new float[n];
+        f.weights = new float[n];
+        for (int i = 0; i < n; i++) {
+            f.ids[i] = in.readInt();
+            f.teams1[i] = in.readInt();
+            f.teams2[i] = in.readInt();
+            f.scores1[i] = in.readByte();
+            f.scores2[i] = in.readByte();
+            f.seasons[i] = in.readShort();
+            f.qualities[i] = in.readFloat();
+            f.weights[i] = in.readFloat();
+        }
+        return f;
+    }
+
+    private String team(int id) {
+        String name = teams.get(id);
+        return name != null ? name : "#" + id;
+    }
+
+    /**
+     * Print all fixtures read
+     */
+    void render(PrintStream out) {
+        StringBuilder sb = new StringBuilder();
+        for (Fixture f : fixtures) {
+            sb.setLength(0);
+            sb.append("Fixture ").append(f.index + 1).append(" (game ").append(f.id).append("): ").append(f.season);
+            if (f.day < SeasonParser.FINALS_OFFSET) {
+                sb.append(" ,").append(f.day).append(".ST ");
+            } else {
+                sb.append(' ').append(SeasonParser.FINALS_NAMES[f.day - SeasonParser.FINALS_OFFSET]).append(' ');
+            }
+            sb.append(team(f.team1)).append(" - ").append(team(f.team2)).append("  rating: ")
+                    .append(Math.round(f.rating1)).append("  ")
+                    .append(mode == Mode.WORLD_CUP ? "corrected diff: " : "diff: ").append(Math.round(f.diff));
+            out.println(sb);
+            for (int i = 0; i < f.ids.length; i++) {
+                sb.setLength(0);
+                sb.append("Quality: ").append(Math.round(f.qualities[i])).append(", Factor ")
+                        .append(format.format(f.weights[i])).append(" -> ").append(f.seasons[i]).append(' ')
+                        .append(team(f.teams1[i])).append(' ').append(f.scores1[i]).append(':').append(f.scores2[i])
+                        .append(' ').append(team(f.teams2[i])).append("  (game ").append(f.ids[i]).append(')');
+                out.println(sb);
+            }
+            sb.setLength(0);
+            sb.append("----> Expected goals: ").append(format.format(f.home)).append(" : ")
+                    .append(format.format(f.away)).append("  (").append(f.ids.length).append(" of ")
+                    .append(f.scanned).append(" games)");
+            out.println(sb);
+            out.println();
+        }
+    }
+
+    /**
+     * <pre>
+     * TraceRenderer trace-file
+     * </pre>
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceRenderer trace-file");
+            System.exit(64);
+        }
+        TraceRenderer renderer = new TraceRenderer();
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+            renderer.read(in);
+        } catch (IOException e) {
+            System.err.println("Error while reading trace \"" + args[0] + "\": " + e);
+            System.exit(66);
+        }
+        renderer.render(System.out);
+    }
+}
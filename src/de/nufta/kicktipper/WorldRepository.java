@@ -1,13 +1,15 @@
 package de.nufta.kicktipper;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.goochjs.glicko2.Rating;
 import org.goochjs.glicko2.RatingCalculator;
-import org.goochjs.glicko2.RatingPeriodResults;
 
 /**
  * An attempt to create correctional values for FIFA regions
@@ -25,70 +27,124 @@ public class WorldRepository {
 
     static final String[] regions = { AFRICA, NORTH_AMERICA, SOUTH_AMERICA, AUSTRALIA, ASIA, EUROPE };
 
-    private final HashMap<String, Team> regionTeamMap = new HashMap<>();
+    private final ConcurrentHashMap<String, Team> regionTeamMap = new ConcurrentHashMap<>();
     /** Maps Country (team name) to region */
-    private final HashMap<String, String> worldMap = new HashMap<>();
+    private final ConcurrentHashMap<String, String> worldMap = new ConcurrentHashMap<>();
 
     RatingCalculator worldCalc = new RatingCalculator();
+    private final RatingEngine.Kind ratingEngine;
+    /** created with the first game between regions, league contexts never rate one */
+    private RatingEngine engine;
 
-    private static final WorldRepository instance = new WorldRepository();
+    /**
+     * Changes whenever a correction may change, i.e. a region rating or the region of a country. Cached corrections
+     * are valid as long as the version they were computed with is current.
+     */
+    private volatile int version = 1;
 
-    private WorldRepository() {}
-
-    static WorldRepository getInstance() {
-        return instance;
+    WorldRepository(final RatingEngine.Kind ratingEngine) {
+        this.ratingEngine = ratingEngine;
     }
 
-    void register(final String phaseName, final String teamName1, final String teamName2) {
+    synchronized void register(final String phaseName, final String teamName1, final String teamName2) {
         for (String region : regions) {
             if (phaseName.contains(region)) {
                 if (region.equals(AUSTRALIA)) {
                     region = ASIA;
                 }
-                worldMap.put(teamName1, region);
-                worldMap.put(teamName2, region);
+                // teams are registered with every game of their group, only the first one changes the map
+                boolean changed = false;
+                if (!region.equals(worldMap.get(teamName1))) {
+                    worldMap.put(teamName1, region);
+                    changed = true;
+                }
+                if (!region.equals(worldMap.get(teamName2))) {
+                    worldMap.put(teamName2, region);
+                    changed = true;
+                }
+                if (changed) {
+                    version++;
+                }
                 break;
             }
         }
     }
 
-    void rate(final String teamName1, final String teamName2, final int score1, final int score2) {
+    synchronized void rate(final String teamName1, final String teamName2, final int score1, final int score2) {
         String region1 = worldMap.get(teamName1);
         String region2 = worldMap.get(teamName2);
         if (region1 != null && region2 != null && (!region1.equals(region2))) {
-            Team team1 = getTeam(region1);
-            Team team2 = getTeam(region2);
-            Rating rating1 = team1.getRating();
-            Rating rating2 = team2.getRating();
-            RatingPeriodResults rpr = new RatingPeriodResults();
-            int result = score1 - score2;
-            if (result == 0) {
-                rpr.addDraw(rating1, rating2);
-            } else if (result > 0) {
-                rpr.addResult(rating1, rating2);
-            } else { // (result < 0)
-                rpr.addResult(rating2, rating1);
+            if (engine == null) {
+                engine = ratingEngine.create(worldCalc);
             }
-            worldCalc.updateRatings(rpr);
+            // every game is a rating period of its own, rating just the two regions
+            engine.addGame(getTeam(region1), getTeam(region2), score1, score2);
+            engine.updateRatings();
+            engine.reset();
+            version++;
         }
     }
+
+    /**
+     * @return the current version of the corrections
+     */
+    int getVersion() {
+        return version;
+    }
     
     double getCorrection (String team1, String team2) {
         if (worldMap.containsKey(team1) && worldMap.containsKey(team2)) {
-            double rating1 = regionTeamMap.get(worldMap.get(team1)).getRating().getRating();
-            double rating2 = regionTeamMap.get(worldMap.get(team2)).getRating().getRating();
+            double rating1 = getRegionRating(worldMap.get(team1));
+            double rating2 = getRegionRating(worldMap.get(team2));
             return (rating1-rating2);
         }
         return 0;
     }
 
-    private Team getTeam(String region) {
+    /**
+     * @return the rating of a region, the default rating if none of its games was rated yet
+     */
+    private double getRegionRating(String region) {
         Team team = regionTeamMap.get(region);
-        if (team == null) {
-            team = new Team(region, new Rating(region, worldCalc));
-            regionTeamMap.put(region, team);
-        }
-        return team;
+        return team == null ? worldCalc.getDefaultRating() : team.getRating().getRating();
+    }
+
+    /**
+     * @return the region of every country (team name)
+     */
+    Map<String, String> getWorldMap() {
+        return Collections.unmodifiableMap(worldMap);
+    }
+
+    /**
+     * @return the teams rating the regions
+     */
+    Collection<Team> getRegionTeams() {
+        return Collections.unmodifiableCollection(regionTeamMap.values());
+    }
+
+    /**
+     * Restore the region of a country from a snapshot
+     */
+    synchronized void restoreCountry(final String country, final String region) {
+        worldMap.put(country, region);
+        version++;
+    }
+
+    /**
+     * Restore the rating of a region from a snapshot
+     */
+    synchronized void restoreRegion(final String region, final Rating restored) {
+        Rating rating = getTeam(region).getRating();
+        rating.setRating(restored.getRating());
+        rating.setRatingDeviation(restored.getRatingDeviation());
+        rating.setVolatility(restored.getVolatility());
+        rating.incrementNumberOfResults(restored.getNumberOfResults() - rating.getNumberOfResults());
+        version++;
+    }
+
+    private Team getTeam(String region) {
+        return regionTeamMap.computeIfAbsent(region, r -> new Team(regionTeamMap.size(), r, new Rating(r, worldCalc)));
     }
     
     String getRegions() {
@@ -102,14 +158,21 @@ public class WorldRepository {
     
     String getRanking() {
         StringBuilder sb = new StringBuilder("Ranking Regions: \n");
-        List<Team> allTeams = new ArrayList<Team>(this.regionTeamMap.values());
-        allTeams.sort((t1, t2) -> {
-            return new Double(t2.getRating().getRating()).compareTo(new Double(t1.getRating().getRating()));
-        });;
-        for (Team team : allTeams) {
+        for (Team team : getRankedRegions()) {
                 sb.append(team).append("\n");
         }
         return sb.toString();
     }
 
+    /**
+     * @return the regions by descending rating
+     */
+    List<Team> getRankedRegions() {
+        List<Team> allTeams = new ArrayList<Team>(this.regionTeamMap.values());
+        allTeams.sort((t1, t2) -> {
+            return new Double(t2.getRating().getRating()).compareTo(new Double(t1.getRating().getRating()));
+        });
+        return allTeams;
+    }
+
 }